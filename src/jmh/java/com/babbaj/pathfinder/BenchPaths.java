@@ -0,0 +1,26 @@
+package com.babbaj.pathfinder;
+
+import java.util.Random;
+
+final class BenchPaths {
+    private BenchPaths() {}
+
+    // A connected path that mostly heads in +x and wanders in y and z like a real nether path
+    static long[] randomWalk(int length, long seed) {
+        final Random random = new Random(seed);
+        final long[] path = new long[length];
+        int x = 0, y = 64, z = 0;
+        for (int i = 0; i < length; i++) {
+            path[i] = PackedPos.pack(x, y, z);
+            final int step = random.nextInt(10);
+            if (step < 6) {
+                x++;
+            } else if (step < 8) {
+                z += random.nextBoolean() ? 1 : -1;
+            } else {
+                y = Math.max(1, Math.min(127, y + (random.nextBoolean() ? 1 : -1)));
+            }
+        }
+        return path;
+    }
+}
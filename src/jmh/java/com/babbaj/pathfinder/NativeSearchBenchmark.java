@@ -0,0 +1,60 @@
+package com.babbaj.pathfinder;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Full segment loop against the native library, with a context that has to generate every chunk and one that already has them
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NativeSearchBenchmark {
+    private static final long START = PackedPos.pack(0, 64, 0);
+
+    @Param({"146008555100680", "1"})
+    public long seed;
+
+    @Param({"1000", "5000"})
+    public int distance;
+
+    @Param({"true", "false"})
+    public boolean raytrace;
+
+    private ContextPool coldPool;
+    private ContextPool warmPool;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // frees every context as soon as it is released
+        this.coldPool = new ContextPool(0, 0);
+        this.warmPool = new ContextPool(Long.MAX_VALUE, Long.MAX_VALUE);
+        search(this.warmPool);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.coldPool.clear();
+        this.warmPool.clear();
+    }
+
+    @Benchmark
+    public PathSearch.Status cold() {
+        return search(this.coldPool);
+    }
+
+    @Benchmark
+    public PathSearch.Status warm() {
+        return search(this.warmPool);
+    }
+
+    private PathSearch.Status search(ContextPool pool) {
+        try (ContextPool.Lease lease = pool.acquire(this.seed)) {
+            final SegmentSizer sizer = new SegmentSizer(SegmentSizer.Settings.fixed(10000));
+            return PathSearch.run(lease, START, PackedPos.pack(this.distance, 64, 0), this.raytrace, sizer, new AtomicBoolean(), packed -> true);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.babbaj.pathfinder;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Following the player along a long path with the index, compared with scanning every point like ActivePath used to
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PathIndexBenchmark {
+    @Param({"1000000"})
+    public int points;
+
+    @Param({"1000"})
+    public int segmentSize;
+
+    @Param({"32"})
+    public int cellSize;
+
+    private long[][] segments;
+    private long[] path;
+    private PathIndex index;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.path = BenchPaths.randomWalk(this.points, 1);
+        final int count = (this.points + this.segmentSize - 1) / this.segmentSize;
+        this.segments = new long[count][];
+        for (int i = 0; i < count; i++) {
+            final int from = i * this.segmentSize;
+            this.segments[i] = Arrays.copyOfRange(this.path, from, Math.min(this.points, from + this.segmentSize + 1));
+        }
+        this.index = build();
+        this.random = new Random(2);
+    }
+
+    private PathIndex build() {
+        final PathIndex index = new PathIndex(this.cellSize);
+        for (long[] segment : this.segments) {
+            index.placeLast(index.addPart(segment));
+        }
+        return index;
+    }
+
+    // A position a few blocks next to a random point of the path
+    private long nearPath() {
+        final long pos = this.path[this.random.nextInt(this.path.length)];
+        return PackedPos.pack(PackedPos.x(pos) + this.random.nextInt(9) - 4, PackedPos.y(pos), PackedPos.z(pos) + this.random.nextInt(9) - 4);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public PathIndex buildIndex() {
+        return build();
+    }
+
+    @Benchmark
+    public PathIndex.Projection nearestOnPath() {
+        final long pos = nearPath();
+        return this.index.nearest(PackedPos.x(pos), PackedPos.y(pos), PackedPos.z(pos), 32);
+    }
+
+    @Benchmark
+    public PathIndex.Projection nearestOffPath() {
+        final long pos = nearPath();
+        return this.index.nearest(PackedPos.x(pos), PackedPos.y(pos), PackedPos.z(pos) + 1000, 32);
+    }
+
+    @Benchmark
+    public PathIndex.Projection nearestUnbounded() {
+        final long pos = nearPath();
+        return this.index.nearest(PackedPos.x(pos), PackedPos.y(pos), PackedPos.z(pos) + 1000, Double.POSITIVE_INFINITY);
+    }
+
+    // far outside the path like a player who went somewhere else, this used to look at every empty cell on the way
+    @Benchmark
+    public PathIndex.Projection nearestFarAway() {
+        final long pos = nearPath();
+        return this.index.nearest(PackedPos.x(pos) + 50000, PackedPos.y(pos), PackedPos.z(pos) + 50000, Double.POSITIVE_INFINITY);
+    }
+
+    @Benchmark
+    public int linearScan() {
+        final long pos = nearPath();
+        final int x = PackedPos.x(pos), y = PackedPos.y(pos), z = PackedPos.z(pos);
+        int best = -1;
+        long bestDistSq = Long.MAX_VALUE;
+        for (int i = 0; i < this.path.length; i++) {
+            final long dx = PackedPos.x(this.path[i]) - x;
+            final long dy = PackedPos.y(this.path[i]) - y;
+            final long dz = PackedPos.z(this.path[i]) - z;
+            final long distSq = dx * dx + dy * dy + dz * dz;
+            if (distSq < bestDistSq) {
+                bestDistSq = distSq;
+                best = i;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,61 @@
+package com.babbaj.pathfinder;
+
+import net.minecraft.util.math.BlockPos;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// The java side of a search result on its way from the native library to the vertex buffer
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PipelineBenchmark {
+    @Param({"10000", "100000"})
+    public int points;
+
+    private long[] path;
+    private LodSegment segment;
+    private PathBuffer buffer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.path = BenchPaths.randomWalk(this.points, 1);
+        this.segment = LodSegment.build(this.path);
+        this.buffer = new PathBuffer();
+    }
+
+    // How segments were converted before they were kept as packed longs
+    @Benchmark
+    public List<BlockPos> toBlockPos() {
+        return Arrays.stream(this.path).mapToObj(BlockPos::fromLong).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public void unpack(Blackhole bh) {
+        for (long pos : this.path) {
+            bh.consume(PackedPos.x(pos));
+            bh.consume(PackedPos.y(pos));
+            bh.consume(PackedPos.z(pos));
+        }
+    }
+
+    @Benchmark
+    public LodSegment buildLevels() {
+        return LodSegment.build(this.path);
+    }
+
+    // Packing every level into the vertex buffer, what PathRenderer uploads
+    @Benchmark
+    public int packVertices() {
+        this.buffer.clear();
+        this.buffer.append(this.segment);
+        return this.buffer.getVertexCount();
+    }
+}
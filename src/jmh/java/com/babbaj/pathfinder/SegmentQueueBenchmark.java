@@ -0,0 +1,54 @@
+package com.babbaj.pathfinder;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+// Handing segments from a search thread to the client thread, compared with the queue that was used before
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class SegmentQueueBenchmark {
+    private final long[] segment = new long[1];
+    private SegmentQueue<long[]> queue;
+    private ConcurrentLinkedQueue<long[]> linkedQueue;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        this.queue = new SegmentQueue<>(32);
+        this.linkedQueue = new ConcurrentLinkedQueue<>();
+    }
+
+    @Benchmark
+    @Group("segmentQueue")
+    @GroupThreads(1)
+    public boolean segmentQueueOffer() {
+        return this.queue.offer(this.segment);
+    }
+
+    @Benchmark
+    @Group("segmentQueue")
+    @GroupThreads(1)
+    public long[] segmentQueuePoll() {
+        return this.queue.poll();
+    }
+
+    @Benchmark
+    @Group("linkedQueue")
+    @GroupThreads(1)
+    public boolean linkedQueueOffer() {
+        // keep it bounded like the segment queue so the benchmark doesn't run out of memory
+        return this.linkedQueue.size() < 32 && this.linkedQueue.offer(this.segment);
+    }
+
+    @Benchmark
+    @Group("linkedQueue")
+    @GroupThreads(1)
+    public long[] linkedQueuePoll() {
+        return this.linkedQueue.poll();
+    }
+}
@@ -0,0 +1,232 @@
+package com.babbaj.pathfinder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The path that is currently shown, as its parts in route order. Parts can be inserted anywhere and the start of the path
+ * can be cut off so a replanned stretch only changes the affected parts of the {@link PathBuffer}. Every part is also
+ * added to a {@link PathIndex} so finding the closest point and the distance left doesn't scan the whole path.
+ */
+public class ActivePath {
+    private final PathBuffer buffer;
+    private final List<Part> parts = new ArrayList<>();
+    private final PathIndex index = PathIndex.fromConfig();
+    private long seed;
+    private boolean raytrace;
+    // changes whenever the path does so work based on an older copy of it can be thrown away
+    private int version;
+
+    private static final class Part {
+        final int slot;
+        final long[] points;
+        final int indexId;
+
+        Part(int slot, long[] points, int indexId) {
+            this.slot = slot;
+            this.points = points;
+            this.indexId = indexId;
+        }
+    }
+
+    public static final class Location {
+        public final int part;
+        public final int point;
+
+        Location(int part, int point) {
+            this.part = part;
+            this.point = point;
+        }
+    }
+
+    public ActivePath(PathBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    // Seed and options the path was searched with, used to search a replacement for part of it
+    public void setSource(long seed, boolean raytrace) {
+        this.seed = seed;
+        this.raytrace = raytrace;
+    }
+
+    public long getSeed() {
+        return this.seed;
+    }
+
+    public boolean isRaytrace() {
+        return this.raytrace;
+    }
+
+    public int getVersion() {
+        return this.version;
+    }
+
+    public void insert(int index, LodSegment segment) {
+        this.version++;
+        final int slot = this.buffer.append(segment);
+        if (slot != -1) {
+            final long[] points = segment.full();
+            final Part part = new Part(slot, points, this.index.addPart(points));
+            this.parts.add(index, part);
+            if (index == this.parts.size() - 1) {
+                this.index.placeLast(part.indexId);
+            } else {
+                updateOrder();
+            }
+        }
+    }
+
+    private void remove(int from, int to) {
+        for (int i = from; i < to; i++) {
+            final Part part = this.parts.get(i);
+            this.buffer.remove(part.slot);
+            this.index.removePart(part.indexId);
+        }
+        this.parts.subList(from, to).clear();
+        updateOrder();
+    }
+
+    private void updateOrder() {
+        final List<Integer> ids = new ArrayList<>(this.parts.size());
+        for (Part part : this.parts) {
+            ids.add(part.indexId);
+        }
+        this.index.setOrder(ids);
+    }
+
+    public void clear() {
+        this.version++;
+        this.parts.clear();
+        this.buffer.clear();
+        this.index.clear();
+    }
+
+    public boolean isEmpty() {
+        return this.parts.isEmpty();
+    }
+
+    public int partCount() {
+        return this.parts.size();
+    }
+
+    // The points of a part, must not be modified
+    public long[] partPoints(int part) {
+        return this.parts.get(part).points;
+    }
+
+    public long firstPoint() {
+        return this.parts.get(0).points[0];
+    }
+
+    public long lastPoint() {
+        final long[] points = this.parts.get(this.parts.size() - 1).points;
+        return points[points.length - 1];
+    }
+
+    // The point on the path closest to the given position
+    public Location nearest(int x, int y, int z) {
+        final PathIndex.Projection projection = this.index.nearest(x, y, z, Double.POSITIVE_INFINITY);
+        if (projection == null) return null;
+        return new Location(partIndex(projection.partId), projection.nearestPoint());
+    }
+
+    // Where the position is along the path, or null if the path is further away than maxDistance
+    public PathIndex.Projection project(double x, double y, double z, double maxDistance) {
+        return this.index.nearest(x, y, z, maxDistance);
+    }
+
+    private int partIndex(int indexId) {
+        for (int i = 0; i < this.parts.size(); i++) {
+            if (this.parts.get(i).indexId == indexId) return i;
+        }
+        throw new IllegalStateException("Part " + indexId + " is not in the path");
+    }
+
+    // Walks along the path from the location until at least the given number of blocks were covered or the path ends
+    public Location advance(Location from, double blocks) {
+        int part = from.part;
+        int point = from.point;
+        double walked = 0;
+        while (walked < blocks) {
+            final long[] points = this.parts.get(part).points;
+            if (point + 1 < points.length) {
+                walked += distance(points[point], points[point + 1]);
+                point++;
+            } else if (part + 1 < this.parts.size()) {
+                part++;
+                point = 0;
+            } else {
+                break;
+            }
+        }
+        return new Location(part, point);
+    }
+
+    public long pointAt(Location location) {
+        return this.parts.get(location.part).points[location.point];
+    }
+
+    // Removes everything before the location, the location becomes the first point of the path
+    public void removeBefore(Location location) {
+        this.version++;
+        remove(0, location.part);
+        if (location.point > 0) {
+            final long[] first = this.parts.get(0).points;
+            remove(0, 1);
+            insert(0, LodSegment.build(Arrays.copyOfRange(first, location.point, first.length)));
+        }
+    }
+
+    // Replaces everything between two locations with the given points, the locations themselves are kept
+    public void replace(Location from, Location to, long[] middle) {
+        final long[] first = this.parts.get(from.part).points;
+        final long[] last = this.parts.get(to.part).points;
+        final int tail = last.length - to.point;
+        final long[] points = new long[from.point + 1 + middle.length + tail];
+        System.arraycopy(first, 0, points, 0, from.point + 1);
+        System.arraycopy(middle, 0, points, from.point + 1, middle.length);
+        System.arraycopy(last, to.point, points, from.point + 1 + middle.length, tail);
+        remove(from.part, to.part + 1);
+        insert(from.part, LodSegment.build(points));
+    }
+
+    // Swaps one part for another in a single step so the path is never drawn without it
+    public void replacePart(int part, LodSegment segment) {
+        remove(part, part + 1);
+        insert(part, segment);
+    }
+
+    // Length in blocks of the whole path
+    public double length() {
+        return this.index.getTotalLength();
+    }
+
+    // Length in blocks of the path up to the location
+    public double lengthBefore(Location location) {
+        double length = 0;
+        for (int i = 0; i < location.part; i++) {
+            length += length(this.parts.get(i).points);
+        }
+        final long[] points = this.parts.get(location.part).points;
+        for (int i = 1; i <= location.point; i++) {
+            length += distance(points[i - 1], points[i]);
+        }
+        return length;
+    }
+
+    public static double length(long[] points) {
+        double length = 0;
+        for (int i = 1; i < points.length; i++) {
+            length += distance(points[i - 1], points[i]);
+        }
+        return length;
+    }
+
+    public static double distance(long a, long b) {
+        final double dx = PackedPos.x(a) - PackedPos.x(b);
+        final double dy = PackedPos.y(a) - PackedPos.y(b);
+        final double dz = PackedPos.z(a) - PackedPos.z(b);
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+}
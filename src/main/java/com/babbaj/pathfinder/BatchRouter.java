@@ -0,0 +1,210 @@
+package com.babbaj.pathfinder;
+
+import dev.babbaj.pathfinder.NetherPathfinder;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Plans a list of routes without starting Minecraft. Routes are searched in parallel on a {@link PathfinderScheduler}
+ * with contexts shared per seed through a {@link ContextPool}, and each result is written as soon as it is done.
+ * <p>
+ * Every line of the route file is {@code <seed> <x,y,z> <x,y,z> [<x,y,z>...]}, empty lines and lines starting with #
+ * are skipped. The output is gzipped: a header (magic, version, route count) followed by one record per route in the
+ * order they finished (route index, status, total/queue/first segment nanos, warm context, length in blocks, number of
+ * points, the packed points).
+ */
+public final class BatchRouter {
+    public static final int MAGIC = 0x4E504252; // NPBR
+    public static final int VERSION = 1;
+
+    private BatchRouter() {}
+
+    static final class Route {
+        final int index;
+        final long seed;
+        final long[] points;
+
+        Route(int index, long seed, long[] points) {
+            this.index = index;
+            this.seed = seed;
+            this.points = points;
+        }
+    }
+
+    private static final class Result {
+        final Route route;
+        PathSearch.Status status = PathSearch.Status.FOUND;
+        long queueNanos;
+        long firstSegmentNanos = -1;
+        long totalNanos;
+        boolean warm;
+        double length;
+        final List<long[]> segments = new ArrayList<>();
+
+        Result(Route route) {
+            this.route = route;
+        }
+
+        int pointCount() {
+            return this.segments.stream().mapToInt(s -> s.length).sum();
+        }
+    }
+
+    static List<Route> readRoutes(Path file) throws IOException {
+        final List<Route> routes = new ArrayList<>();
+        final List<String> lines = Files.readAllLines(file);
+        for (int i = 0; i < lines.size(); i++) {
+            final String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            final String[] parts = line.split("\\s+");
+            if (parts.length < 3) {
+                throw new IllegalArgumentException("Line " + (i + 1) + ": expected <seed> <x,y,z> <x,y,z>");
+            }
+            final long[] points = new long[parts.length - 1];
+            for (int p = 1; p < parts.length; p++) {
+                final String[] coords = parts[p].split(",");
+                if (coords.length != 3) {
+                    throw new IllegalArgumentException("Line " + (i + 1) + ": expected x,y,z, got " + parts[p]);
+                }
+                final int y = Integer.parseInt(coords[1]);
+                if (y <= 0 || y > 127) {
+                    throw new IllegalArgumentException("Line " + (i + 1) + ": Y level not in valid range");
+                }
+                points[p - 1] = PackedPos.pack(Integer.parseInt(coords[0]), y, Integer.parseInt(coords[2]));
+            }
+            routes.add(new Route(routes.size(), Long.parseLong(parts[0]), points));
+        }
+        return routes;
+    }
+
+    // Searches every leg of the route one after another on the same context
+    private static Result search(Route route, ContextPool pool, boolean raytrace, SegmentSizer.Settings sizing, long timeoutNanos, long submitted) {
+        final Result result = new Result(route);
+        final long start = System.nanoTime();
+        final long deadline = timeoutNanos > 0 ? start + timeoutNanos : Long.MAX_VALUE;
+        result.queueNanos = start - submitted;
+        try (ContextPool.Lease lease = pool.acquire(route.seed)) {
+            result.warm = lease.isWarm();
+            final AtomicBoolean cancelled = new AtomicBoolean();
+            for (int i = 0; i + 1 < route.points.length && result.status == PathSearch.Status.FOUND; i++) {
+                final SegmentSizer sizer = new SegmentSizer(sizing);
+                sizer.setDeadline(deadline);
+                result.status = PathSearch.run(lease, route.points[i], route.points[i + 1], raytrace, sizer, cancelled, packed -> {
+                    if (result.firstSegmentNanos < 0) {
+                        result.firstSegmentNanos = System.nanoTime() - start;
+                    }
+                    result.segments.add(packed);
+                    result.length += ActivePath.length(packed);
+                    return true;
+                });
+            }
+        }
+        result.totalNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    private static void write(DataOutputStream out, Result result) throws IOException {
+        out.writeInt(result.route.index);
+        out.writeByte(result.status.ordinal());
+        out.writeLong(result.totalNanos);
+        out.writeLong(result.queueNanos);
+        out.writeLong(result.firstSegmentNanos);
+        out.writeBoolean(result.warm);
+        out.writeDouble(result.length);
+        out.writeInt(result.pointCount());
+        for (long[] packed : result.segments) {
+            for (long pos : packed) {
+                out.writeLong(pos);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        final OptionParser parser = new OptionParser();
+        parser.accepts("workers").withRequiredArg();
+        parser.accepts("segment").withRequiredArg();
+        parser.accepts("noraytrace");
+        parser.accepts("timeout").withRequiredArg();
+        final OptionSet options = parser.parse(args);
+        final List<?> files = options.nonOptionArguments();
+        if (files.size() != 2) {
+            System.err.println("Usage: BatchRouter <routes file> <output file> [--workers <n>] [--segment <size>] [--timeout <seconds>] [--noraytrace]");
+            System.exit(2);
+        }
+        if (!NetherPathfinder.isThisSystemSupported()) {
+            System.err.println("Nether pathfinder is not supported on this system");
+            System.exit(1);
+        }
+        final List<Route> routes = readRoutes(Paths.get(files.get(0).toString()));
+        final Path outFile = Paths.get(files.get(1).toString());
+        final int workers = options.has("workers")
+            ? Integer.parseInt((String) options.valueOf("workers"))
+            : Runtime.getRuntime().availableProcessors();
+        if (workers <= 0) throw new IllegalArgumentException("Worker count must be positive");
+        final SegmentSizer.Settings sizing = options.has("segment")
+            ? SegmentSizer.Settings.fixed(Integer.parseInt((String) options.valueOf("segment")))
+            : SegmentSizer.Settings.fromConfig();
+        final boolean raytrace = !options.has("noraytrace");
+        // a route that runs out of time keeps the part of the path that was found
+        final long timeoutNanos = options.has("timeout")
+            ? (long) (Double.parseDouble((String) options.valueOf("timeout")) * 1e9)
+            : 0;
+
+        // every route is queued up front, the worker count is what bounds how many run at once
+        final PathfinderScheduler scheduler = new PathfinderScheduler(workers, Math.max(1, routes.size()));
+        final ContextPool pool = ContextPool.fromConfig();
+        final Timing routeTime = new Timing();
+        final int[] statusCounts = new int[PathSearch.Status.values().length];
+        final long t1 = System.nanoTime();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(outFile))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(routes.size());
+            final CompletableFuture<?>[] futures = new CompletableFuture[routes.size()];
+            for (Route route : routes) {
+                final long submitted = System.nanoTime();
+                futures[route.index] = scheduler.submit(PathfinderScheduler.Priority.BACKGROUND, () -> search(route, pool, raytrace, sizing, timeoutNanos, submitted))
+                    .thenAccept(result -> {
+                        synchronized (out) {
+                            try {
+                                write(out, result);
+                            } catch (IOException ex) {
+                                throw new UncheckedIOException(ex);
+                            }
+                            routeTime.record(result.totalNanos);
+                            statusCounts[result.status.ordinal()]++;
+                            System.out.println(String.format(Locale.ROOT, "route %d: %s in %.1fms (first segment %.1fms, queued %.1fms, %s context), %d blocks, %d points",
+                                route.index, result.status, result.totalNanos / 1e6, result.firstSegmentNanos / 1e6, result.queueNanos / 1e6,
+                                result.warm ? "warm" : "cold", Math.round(result.length), result.pointCount()));
+                        }
+                    });
+            }
+            int failed = 0;
+            for (CompletableFuture<?> future : futures) {
+                try {
+                    future.join();
+                } catch (RuntimeException ex) {
+                    ex.printStackTrace();
+                    failed++;
+                }
+            }
+            System.out.println(String.format(Locale.ROOT, "%d routes in %.2f seconds with %d workers: %d found, %d timed out, %d no path, %d failed",
+                routes.size(), (System.nanoTime() - t1) / 1e9, workers, statusCounts[PathSearch.Status.FOUND.ordinal()],
+                statusCounts[PathSearch.Status.TIMED_OUT.ordinal()], statusCounts[PathSearch.Status.NO_PATH.ordinal()], failed));
+            System.out.println("route time: " + routeTime + ", contexts created: " + PathfinderMetrics.CONTEXTS_CREATED.get());
+        } finally {
+            pool.clear();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.babbaj.pathfinder;
+
+import java.util.BitSet;
+
+// Which blocks in a box are solid, copied from the world on the client thread so it can be read from any thread
+public final class BlockGrid {
+    public final int minX, minY, minZ;
+    public final int sizeX, sizeY, sizeZ;
+    private final BitSet solid;
+
+    public BlockGrid(int minX, int minY, int minZ, int sizeX, int sizeY, int sizeZ) {
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.sizeZ = sizeZ;
+        this.solid = new BitSet(sizeX * sizeY * sizeZ);
+    }
+
+    public int volume() {
+        return this.sizeX * this.sizeY * this.sizeZ;
+    }
+
+    public boolean contains(int x, int y, int z) {
+        return x >= this.minX && y >= this.minY && z >= this.minZ
+            && x < this.minX + this.sizeX && y < this.minY + this.sizeY && z < this.minZ + this.sizeZ;
+    }
+
+    // Index of a position inside the grid
+    public int index(int x, int y, int z) {
+        return ((y - this.minY) * this.sizeZ + (z - this.minZ)) * this.sizeX + (x - this.minX);
+    }
+
+    public long posOf(int index) {
+        final int x = index % this.sizeX;
+        final int z = (index / this.sizeX) % this.sizeZ;
+        final int y = index / (this.sizeX * this.sizeZ);
+        return PackedPos.pack(this.minX + x, this.minY + y, this.minZ + z);
+    }
+
+    public void setSolid(int x, int y, int z) {
+        this.solid.set(index(x, y, z));
+    }
+
+    // Positions outside of the grid count as solid
+    public boolean isSolid(int x, int y, int z) {
+        return !contains(x, y, z) || this.solid.get(index(x, y, z));
+    }
+}
@@ -0,0 +1,293 @@
+package com.babbaj.pathfinder;
+
+import dev.babbaj.pathfinder.NetherPathfinder;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps native pathfinder contexts alive between searches so chunks that were already generated for a seed don't have
+ * to be generated again. A context is only ever used by one search at a time, the search holds it through a {@link Lease}.
+ */
+public class ContextPool {
+    // the native side stores each nether chunk as a 16x128x16 bitset
+    private static final long CHUNK_BYTES = 16 * 16 * 128 / 8;
+    private static final long CONTEXT_BYTES = 64 * 1024;
+    // the search explores around the path it returns so count the neighbouring chunks too
+    private static final int CHUNK_SPREAD = 1;
+
+    private final long maxEstimatedBytes;
+    private final long maxIdleNanos;
+    // least recently released first
+    private final Deque<Entry> idle = new ArrayDeque<>();
+    private final Set<Entry> leased = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    // contexts are freed as soon as they are released once the pool is closed
+    private boolean closed;
+
+    public ContextPool(long maxEstimatedBytes, long maxIdleMillis) {
+        this.maxEstimatedBytes = maxEstimatedBytes;
+        this.maxIdleNanos = TimeUnit.MILLISECONDS.toNanos(maxIdleMillis);
+    }
+
+    public static ContextPool fromConfig() {
+        return new ContextPool((long) PathFinderConfig.contextPoolMaxMemoryMiB << 20, TimeUnit.SECONDS.toMillis(PathFinderConfig.contextPoolMaxIdleSeconds));
+    }
+
+    // Creating and freeing contexts can take a while, both happen outside the lock so other seeds and hits don't wait
+    public Lease acquire(long seed) {
+        return acquire(seed, false);
+    }
+
+    // For work like the warm-up that only prepares a context for real searches. A search that acquires the same seed
+    // while the context is held this way waits for the lease to be closed and takes the context over, so it doesn't get
+    // a cold one next to it
+    public Lease acquireBackground(long seed) {
+        return acquire(seed, true);
+    }
+
+    private Lease acquire(long seed, boolean background) {
+        final Entry entry;
+        synchronized (this) {
+            while (true) {
+                if (this.closed) throw new IllegalStateException("The context pool is closed");
+                for (Iterator<Entry> it = this.idle.descendingIterator(); it.hasNext();) {
+                    final Entry reused = it.next();
+                    if (reused.seed == seed) {
+                        it.remove();
+                        reused.background = background;
+                        this.leased.add(reused);
+                        this.hits++;
+                        return new Lease(reused, true);
+                    }
+                }
+                final Entry held = background ? null : heldInBackground(seed);
+                if (held == null) break;
+                // background work only holds its context for a short step
+                boolean interrupted = false;
+                held.waiters++;
+                try {
+                    while (held.background && !held.handedOver && this.leased.contains(held)) {
+                        wait();
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    interrupted = true;
+                } finally {
+                    held.waiters--;
+                }
+                if (held.handedOver) {
+                    held.handedOver = false;
+                    held.background = false;
+                    this.hits++;
+                    PathfinderMetrics.CONTEXTS_HANDED_OVER.incrementAndGet();
+                    return new Lease(held, true);
+                }
+                if (interrupted) break;
+            }
+            this.misses++;
+            // reserved so it counts against the limit while it is created
+            entry = new Entry(seed);
+            entry.background = background;
+            this.leased.add(entry);
+        }
+        try {
+            entry.context = NetherPathfinder.newContext(seed);
+        } catch (RuntimeException | Error ex) {
+            synchronized (this) {
+                this.leased.remove(entry);
+                if (entry.waiters > 0) notifyAll();
+            }
+            throw ex;
+        }
+        PathfinderMetrics.CONTEXTS_CREATED.incrementAndGet();
+        // make room for the new context
+        free(evict(System.nanoTime()));
+        return new Lease(entry, false);
+    }
+
+    private Entry heldInBackground(long seed) {
+        for (Entry entry : this.leased) {
+            if (entry.seed == seed && entry.background) return entry;
+        }
+        return null;
+    }
+
+    private void release(Entry entry) {
+        final List<Entry> freed;
+        synchronized (this) {
+            if (entry.background && entry.waiters > 0 && !this.closed) {
+                // stays leased, one of the waiting searches takes it
+                entry.handedOver = true;
+                notifyAll();
+                return;
+            }
+            this.leased.remove(entry);
+            if (entry.waiters > 0) notifyAll();
+            if (this.closed) {
+                this.evictions++;
+                freed = Collections.singletonList(entry);
+            } else {
+                entry.lastReleased = System.nanoTime();
+                this.idle.addLast(entry);
+                freed = unlinkEvicted(entry.lastReleased);
+            }
+        }
+        free(freed);
+    }
+
+    // Frees contexts that have been idle for too long, should be called periodically
+    public void evictExpired() {
+        free(evict(System.nanoTime()));
+    }
+
+    // Frees every idle context, contexts that are currently leased are kept
+    public void clear() {
+        final List<Entry> freed;
+        synchronized (this) {
+            freed = new ArrayList<>(this.idle);
+            this.evictions += this.idle.size();
+            this.idle.clear();
+        }
+        free(freed);
+    }
+
+    // Frees every idle context now and every leased one when its lease is closed, nothing can be acquired afterwards
+    public void close() {
+        synchronized (this) {
+            this.closed = true;
+        }
+        clear();
+    }
+
+    private synchronized List<Entry> evict(long now) {
+        return unlinkEvicted(now);
+    }
+
+    // Takes the idle contexts that are over the limits out of the pool, they are freed by the caller after the lock is released
+    private List<Entry> unlinkEvicted(long now) {
+        final List<Entry> evicted = new ArrayList<>();
+        long bytes = estimatedBytes();
+        while (!this.idle.isEmpty()) {
+            final Entry oldest = this.idle.peekFirst();
+            if (bytes <= this.maxEstimatedBytes && now - oldest.lastReleased < this.maxIdleNanos) {
+                break;
+            }
+            this.idle.removeFirst();
+            bytes -= oldest.estimatedBytes;
+            evicted.add(oldest);
+            this.evictions++;
+        }
+        return evicted;
+    }
+
+    private static void free(List<Entry> entries) {
+        for (Entry entry : entries) {
+            NetherPathfinder.freeContext(entry.context);
+            PathfinderMetrics.CONTEXTS_FREED.incrementAndGet();
+        }
+    }
+
+    public synchronized long estimatedBytes() {
+        long sum = 0;
+        for (Entry entry : this.idle) sum += entry.estimatedBytes;
+        for (Entry entry : this.leased) sum += entry.estimatedBytes;
+        return sum;
+    }
+
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    public synchronized long getEvictions() {
+        return this.evictions;
+    }
+
+    public synchronized int getLiveContexts() {
+        return this.idle.size() + this.leased.size();
+    }
+
+    public synchronized int getIdleContexts() {
+        return this.idle.size();
+    }
+
+    private static final class Entry {
+        final long seed;
+        // written by the thread that reserved the entry before its first lease is handed out
+        long context;
+        // only written by the lease holder
+        final Set<Long> chunks = new HashSet<>();
+        volatile long estimatedBytes = CONTEXT_BYTES;
+        long lastReleased;
+        // held through acquireBackground, searches of the same seed wait for it instead of creating another context
+        boolean background;
+        int waiters;
+        // released by the background lease and not yet taken by a waiting search
+        boolean handedOver;
+
+        Entry(long seed) {
+            this.seed = seed;
+        }
+    }
+
+    public final class Lease implements AutoCloseable {
+        private final Entry entry;
+        private final boolean warm;
+        private boolean closed;
+
+        private Lease(Entry entry, boolean warm) {
+            this.entry = entry;
+            this.warm = warm;
+        }
+
+        public long context() {
+            return this.entry.context;
+        }
+
+        public long seed() {
+            return this.entry.seed;
+        }
+
+        // true if the context was reused from an earlier search
+        public boolean isWarm() {
+            return this.warm;
+        }
+
+        // Updates the memory estimate of this context with the chunks a search result went through
+        public void recordSegment(long[] packed) {
+            final Set<Long> chunks = this.entry.chunks;
+            final int before = chunks.size();
+            long lastChunk = Long.MIN_VALUE;
+            for (long pos : packed) {
+                final long chunk = PackedPos.chunkKey(pos);
+                if (chunk == lastChunk) continue;
+                lastChunk = chunk;
+                final int cx = PackedPos.x(pos) >> 4;
+                final int cz = PackedPos.z(pos) >> 4;
+                for (int dx = -CHUNK_SPREAD; dx <= CHUNK_SPREAD; dx++) {
+                    for (int dz = -CHUNK_SPREAD; dz <= CHUNK_SPREAD; dz++) {
+                        chunks.add(PackedPos.chunkKey(cx + dx, cz + dz));
+                    }
+                }
+            }
+            if (chunks.size() != before) {
+                this.entry.estimatedBytes = CONTEXT_BYTES + chunks.size() * CHUNK_BYTES;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!this.closed) {
+                this.closed = true;
+                release(this.entry);
+            }
+        }
+    }
+}
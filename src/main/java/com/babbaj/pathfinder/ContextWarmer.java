@@ -0,0 +1,95 @@
+package com.babbaj.pathfinder;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Gets a context ready before the first search needs it. The context is created right away and then a few directions
+ * around the player's heading are searched a little way so the terrain there is already generated. Every step is a
+ * separate background task that only holds the context for one small segment, so queued interactive searches always run
+ * first and {@link #preempt()} stops the warm-up at the next segment. A search that needs the context while a step holds
+ * it waits for that step and takes the context over.
+ */
+public class ContextWarmer {
+    private final PathfinderScheduler scheduler;
+    private final ContextPool pool;
+    // flag of the warm-up that is running, a new warm-up gets a new flag
+    private AtomicBoolean stopped = new AtomicBoolean(true);
+
+    public ContextWarmer(PathfinderScheduler scheduler, ContextPool pool) {
+        this.scheduler = scheduler;
+        this.pool = pool;
+    }
+
+    public void start(long seed, int x, int y, int z, float yawDegrees) {
+        preempt();
+        final AtomicBoolean stop = new AtomicBoolean();
+        this.stopped = stop;
+
+        final long origin = PackedPos.pack(x, Math.max(1, Math.min(126, y)), z);
+        final int distance = PathFinderConfig.prefetchDistanceBlocks;
+        final long[] targets = new long[distance > 0 ? 3 : 0];
+        for (int i = 0; i < targets.length; i++) {
+            final double theta = Math.toRadians(yawDegrees + (i - 1) * PathFinderConfig.prefetchConeDegrees);
+            targets[i] = PackedPos.pack(
+                (int) Math.round(x - Math.sin(theta) * distance),
+                PackedPos.y(origin),
+                (int) Math.round(z + Math.cos(theta) * distance));
+        }
+        final long t1 = System.nanoTime();
+        // the first step creates the context even if there is nothing to prefetch
+        this.scheduler.submit(PathfinderScheduler.Priority.BACKGROUND, () -> {
+            // a search that started first already has its own context
+            if (!stop.get()) this.pool.acquireBackground(seed).close();
+            return null;
+        }).whenComplete((ignored, ex) -> {
+            if (ex != null) {
+                ex.printStackTrace();
+                return;
+            }
+            step(seed, targets, 0, origin, origin, stop, t1);
+        });
+    }
+
+    // Stops the warm-up, whatever it already generated stays in the context
+    public void preempt() {
+        if (this.stopped.compareAndSet(false, true)) {
+            PathfinderMetrics.WARMUPS_PREEMPTED.incrementAndGet();
+        }
+    }
+
+    private void step(long seed, long[] targets, int ray, long origin, long from, AtomicBoolean stop, long started) {
+        if (stop.get()) return;
+        if (ray == targets.length) {
+            PathfinderMetrics.WARMUP_TIME.record(System.nanoTime() - started);
+            stop.set(true);
+            return;
+        }
+        final SegmentSizer sizer = new SegmentSizer(SegmentSizer.Settings.fixed(PathFinderConfig.prefetchSegmentSize));
+        this.scheduler.submit(PathfinderScheduler.Priority.BACKGROUND, () -> {
+            if (stop.get()) return null;
+            final long[] end = {from};
+            final PathSearch.Status status;
+            try (ContextPool.Lease lease = this.pool.acquireBackground(seed)) {
+                // one segment per task so the context is given back between segments
+                status = PathSearch.run(lease, from, targets[ray], false, sizer, stop, packed -> {
+                    end[0] = packed[packed.length - 1];
+                    return false;
+                });
+            }
+            PathfinderMetrics.WARMUP_SEGMENTS.incrementAndGet();
+            // null means this direction is done
+            return status == PathSearch.Status.CANCELLED && end[0] != from ? end[0] : null;
+        }).whenComplete((next, ex) -> {
+            if (ex != null) {
+                // most likely the queue is full of real work
+                stop.set(true);
+                return;
+            }
+            if (next != null) {
+                step(seed, targets, ray, origin, next, stop, started);
+            } else {
+                step(seed, targets, ray + 1, origin, origin, stop, started);
+            }
+        });
+    }
+}
@@ -2,10 +2,11 @@ package com.babbaj.pathfinder;
 
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
+import com.google.gson.reflect.TypeToken;
 import dev.babbaj.pathfinder.NetherPathfinder;
-import dev.babbaj.pathfinder.PathSegment;
 import joptsimple.*;
 import net.minecraft.client.Minecraft;
+import net.minecraft.client.multiplayer.WorldClient;
 import net.minecraft.client.renderer.GlStateManager;
 import net.minecraft.entity.Entity;
 import net.minecraft.util.Tuple;
@@ -17,33 +18,131 @@ import net.minecraftforge.client.event.RenderWorldLastEvent;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
 import net.minecraftforge.fml.common.gameevent.TickEvent;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public class ExamplePathfinderControl {
 
-    private final ExecutorService executor = Executors.newCachedThreadPool();
-    private final Map<String, Long> seeds;
-    private final List<PathRenderer> renderList = new ArrayList<>();
-    private PathFinder pathFinder;
+    final PathfinderScheduler scheduler = PathfinderScheduler.fromConfig();
+    final ContextPool contextPool = ContextPool.fromConfig();
+    private final SegmentIngester ingester = SegmentIngester.fromConfig();
+    // opened by the startup thread, null if it is disabled or couldn't be opened
+    private volatile PathCache pathCache;
+    final ContextWarmer warmer = new ContextWarmer(this.scheduler, this.contextPool);
+    private final TraceRecorder tracer = new TraceRecorder(PathFinderMod.TRACE_PATH);
+    private boolean wasInNether;
+    private final JsonStore<Long> seeds = new JsonStore<>(PathFinderMod.SEEDS_PATH, new TypeToken<Map<String, Long>>() {}.getType());
+    // lists of x,y,z targets for ;nearest by name
+    final JsonStore<List<int[]>> targetSets = new JsonStore<>(PathFinderMod.TARGETS_PATH, new TypeToken<Map<String, List<int[]>>>() {}.getType());
+    // hub networks by seed, read the first time they are used
+    private final Map<Long, RouteNetwork> networks = new HashMap<>();
+    private final long createdNanos = System.nanoTime();
+    // completes once the native library, the seeds and the path cache are loaded, commands wait for it
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+    // read by the metrics exporter thread so this has to be safe to iterate from there
+    final Map<String, PathSession> sessions = new ConcurrentHashMap<>();
+    private int sessionsCreated;
+
+    private static final String DEFAULT_SESSION = "default";
+    private static final float[][] SESSION_COLORS = {
+        {0, 0, 1.f},
+        {1.f, 0.5f, 0},
+        {0, 1.f, 0},
+        {1.f, 0, 1.f},
+        {0, 1.f, 1.f},
+        {1.f, 1.f, 0}
+    };
 
     private final Map<String, Function<OptionParser, ICommand>> commands = ImmutableMap.<String, Function<OptionParser, ICommand>>builder()
         .put("help", Help::new)
         .put("pathfind", PathFind::new)
         .put("thisway", Thisway::new)
+        .put("nearest", parser -> new NearestCommand(this, parser))
+        .put("replan", parser -> new ReplanCommand(this, parser))
         .put("addseed", AddSeed::new)
         .put("cancel", Cancel::new)
         .put("reset", Reset::new)
+        .put("export", parser -> new ExportCommand(this, parser))
+        .put("import", parser -> new ImportCommand(this, parser))
+        .put("stats", StatsCommand::new)
+        .put("progress", parser -> new ProgressCommand(this, parser))
+        .put("hub", parser -> new HubCommand(this, parser))
         .build();
 
-    public ExamplePathfinderControl(Map<String, Long> seeds) {
-        this.seeds = seeds;
-        this.seeds.putIfAbsent("connect.2b2t.org", 146008555100680L);
-        this.seeds.putIfAbsent("2b2t.org", 146008555100680L);
+    public ExamplePathfinderControl() {
+        registerGauges();
+        PathfinderMetrics.startExport(PathFinderMod.METRICS_CSV_PATH, PathFinderMod.METRICS_JSON_PATH, PathFinderConfig.metricsExportSeconds);
+        final Thread startup = new Thread(this::startup, "Pathfinder Startup");
+        startup.setDaemon(true);
+        startup.start();
+    }
+
+    // Everything slow that used to happen on the mod loading thread
+    private void startup() {
+        try {
+            final long t1 = System.nanoTime();
+            if (!NetherPathfinder.isThisSystemSupported()) {
+                throw new IllegalStateException("This system isn't supported");
+            }
+            final long t2 = System.nanoTime();
+            this.seeds.load();
+            this.seeds.putDefault("connect.2b2t.org", 146008555100680L);
+            this.seeds.putDefault("2b2t.org", 146008555100680L);
+            this.targetSets.load();
+            final long t3 = System.nanoTime();
+            this.pathCache = openPathCache();
+            if (this.pathCache != null) {
+                PathfinderMetrics.gauge("cache.hits", this.pathCache::getHits);
+                PathfinderMetrics.gauge("cache.misses", this.pathCache::getMisses);
+                PathfinderMetrics.gauge("cache.bytes", this.pathCache::sizeBytes);
+            }
+            final long t4 = System.nanoTime();
+            PathfinderMetrics.STARTUP_READY.record(t4 - this.createdNanos);
+            PathFinderMod.getLogger().info(String.format("Ready %.1fms after init (native library %.1fms, seeds and targets %.1fms, path cache %.1fms)",
+                (t4 - this.createdNanos) / 1e6, (t2 - t1) / 1e6, (t3 - t2) / 1e6, (t4 - t3) / 1e6));
+            this.ready.complete(null);
+        } catch (Throwable ex) {
+            PathFinderMod.getLogger().fatal("Nether pathfinder failed to start", ex);
+            this.ready.completeExceptionally(ex);
+        }
+    }
+
+    private boolean isReady() {
+        return this.ready.isDone() && !this.ready.isCompletedExceptionally();
+    }
+
+    private void registerGauges() {
+        PathfinderMetrics.gauge("scheduler.queued", this.scheduler::getQueueDepth);
+        PathfinderMetrics.gauge("scheduler.active", this.scheduler::getActiveCount);
+        PathfinderMetrics.gauge("context.live", this.contextPool::getLiveContexts);
+        PathfinderMetrics.gauge("context.idle", this.contextPool::getIdleContexts);
+        PathfinderMetrics.gauge("context.hits", this.contextPool::getHits);
+        PathfinderMetrics.gauge("context.misses", this.contextPool::getMisses);
+        PathfinderMetrics.gauge("context.evictions", this.contextPool::getEvictions);
+        PathfinderMetrics.gauge("context.estimated_bytes", this.contextPool::estimatedBytes);
+        PathfinderMetrics.gauge("ingest.backlog", this.ingester::getBacklog);
+        PathfinderMetrics.gauge("ingest.max_backlog", this.ingester::getMaxBacklog);
+        PathfinderMetrics.gauge("render.vertices", () -> this.sessions.values().stream().mapToLong(s -> s.renderer.getBuffer().getVertexCount()).sum());
+        PathfinderMetrics.gauge("session.count", this.sessions::size);
+        PathfinderMetrics.gauge("session.searching", () -> this.sessions.values().stream().filter(PathSession::isSearching).count());
+    }
+
+    private static PathCache openPathCache() {
+        if (PathFinderConfig.pathCacheMaxMiB <= 0) return null;
+        try {
+            return PathCache.open(PathFinderMod.CACHE_PATH, (long) PathFinderConfig.pathCacheMaxMiB << 20);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            return null;
+        }
     }
 
     // TODO: add description function
@@ -86,7 +185,7 @@ public class ExamplePathfinderControl {
         }
     }
 
-    private BlockPos parsePosition(String x, String y, String z) {
+    BlockPos parsePosition(String x, String y, String z) {
         final Entity player = Minecraft.getMinecraft().player;
         return new BlockPos(parseCoord(x, (int)player.posX), parseCoord(y, (int)player.posY), parseCoord(z, (int)player.posZ));
     }
@@ -108,21 +207,41 @@ public class ExamplePathfinderControl {
         }
     }
 
-    private void cancelExistingPathfinder() {
-        if (pathFinder != null) {
-            pathFinder.cancelled.set(true);
-            pathFinder = null;
-        }
+    PathSession session(String name) {
+        return this.sessions.computeIfAbsent(name, n -> {
+            final float[] color = SESSION_COLORS[this.sessionsCreated++ % SESSION_COLORS.length];
+            final String prefix = n.equals(DEFAULT_SESSION) ? "" : "[" + n + "] ";
+            final PathValidator validator = new PathValidator(this.scheduler, msg -> sendMessage(prefix + msg));
+            return new PathSession(n, color[0], color[1], color[2], validator);
+        });
+    }
+
+    static String sessionName(OptionSet options) {
+        return options.has("session") ? (String) options.valueOf("session") : DEFAULT_SESSION;
+    }
+
+    // The sessions named by the command's argument, or all of them if there is none
+    List<PathSession> selectSessions(List<String> args) {
+        if (args.isEmpty()) return new ArrayList<>(this.sessions.values());
+        if (args.size() != 1) throw new IllegalArgumentException("Expected 0 or 1 arguments");
+        final PathSession session = this.sessions.get(args.get(0));
+        if (session == null) throw new IllegalArgumentException("No session named " + args.get(0));
+        return Collections.singletonList(session);
     }
 
-    private void resetRenderer() {
-        for (PathRenderer segment : this.renderList) {
-            segment.deleteBuffer();
+    static String prefix(PathSession session) {
+        return session.name.equals(DEFAULT_SESSION) ? "" : "[" + session.name + "] ";
+    }
+
+    // Searches take up workers until they finish so only a few sessions may search at once
+    void checkAdmission(String name) {
+        final long searching = this.sessions.values().stream().filter(s -> !s.name.equals(name) && s.isSearching()).count();
+        if (searching >= PathFinderConfig.maxActiveSessions) {
+            throw new IllegalStateException(searching + " other sessions are already searching, cancel one first");
         }
-        this.renderList.clear();
     }
 
-    private static void sendMessage(String str) {
+    static void sendMessage(String str) {
         Minecraft.getMinecraft().player.sendMessage(new TextComponentString(str));
     }
 
@@ -136,19 +255,7 @@ public class ExamplePathfinderControl {
         }
     }
 
-    private static void acceptPathfindFlags(OptionParser parser) {
-        parser.accepts("seed").withRequiredArg();
-        parser.accepts("noraytrace");
-    }
-
-    private static List<String> pathfindHelp() {
-        return Arrays.asList(
-                "--seed <seed>",
-                "--noraytrace  do not simplify the result of the pathfinder"
-        );
-    }
-
-    private long getSeed(OptionSet options) {
+    long getSeed(OptionSet options) {
         final long seed;
         if (options.has("seed")) {
            return getSeedFomOption((String) options.valueOf("seed"));
@@ -164,55 +271,180 @@ public class ExamplePathfinderControl {
         }
     }
 
+    List<Long> routePoints(OptionSet options, BlockPos start, BlockPos end) {
+        final List<Long> points = new ArrayList<>();
+        points.add(start.toLong());
+        for (Object via : options.valuesOf("via")) {
+            final String[] coords = ((String) via).split(",");
+            if (coords.length != 3) {
+                throw new IllegalArgumentException("Expected --via <x,y,z>, got " + via);
+            }
+            final BlockPos pos = parsePosition(coords[0], coords[1], coords[2]);
+            checkY(pos.getY());
+            points.add(pos.toLong());
+        }
+        points.add(end.toLong());
+        if (options.has("autosplit")) {
+            final Object blocks = options.valueOf("autosplit");
+            final int legBlocks = blocks != null ? Integer.parseInt((String) blocks) : PathFinderConfig.autoSplitLegBlocks;
+            if (legBlocks <= 0) {
+                throw new IllegalArgumentException("Leg length must be positive");
+            }
+            return RouteSearch.splitStraight(points, legBlocks);
+        }
+        return points;
+    }
+
+    RouteNetwork network(long seed) {
+        return this.networks.computeIfAbsent(seed, s -> RouteNetwork.open(PathFinderMod.NETWORK_PATH, s));
+    }
+
+    // Returns false if the network was already being built
+    boolean buildNetwork(RouteNetwork network) {
+        return network.build(this.scheduler, this.contextPool, PathFinderConfig.networkCorridorNeighbors,
+            msg -> Minecraft.getMinecraft().addScheduledTask(() -> sendMessage(msg)));
+    }
+
+    // The points of the route through the hubs of the network with the corridors between them put in knownLegs, or null to search directly.
+    // Corridors are read by the search, one that can't be read is dropped and its leg is searched instead
+    private List<Long> networkPoints(OptionSet options, long seed, long start, long end, Map<Integer, Supplier<List<long[]>>> knownLegs) {
+        if (options.has("via") || options.has("autosplit")) {
+            throw new IllegalArgumentException("--network can't be used with --via or --autosplit");
+        }
+        if (options.has("noraytrace")) {
+            sendMessage("The network only has raytraced corridors, searching directly");
+            return null;
+        }
+        final RouteNetwork network = network(seed);
+        final RouteNetwork.Plan plan = network.plan(start, end, PathFinderConfig.networkMaxDetour);
+        if (plan == null) {
+            sendMessage("No way through the network is short enough, searching directly");
+            return null;
+        }
+        final List<Long> points = new ArrayList<>();
+        points.add(start);
+        plan.hubs.forEach(hub -> points.add(hub.pos()));
+        points.add(end);
+        for (int i = 1; i < plan.hubs.size(); i++) {
+            final RouteNetwork.Hub from = plan.hubs.get(i - 1);
+            final RouteNetwork.Hub to = plan.hubs.get(i);
+            knownLegs.put(i, () -> {
+                try {
+                    return network.readCorridor(from, to);
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                    network.dropCorridor(from, to);
+                    Minecraft.getMinecraft().addScheduledTask(() -> sendMessage("Couldn't read the corridor from " + from.name + " to " + to.name + ", searching it instead. Use ;hub build to add it back"));
+                    return null;
+                }
+            });
+        }
+        sendMessage(String.format("Going through %d hubs: %s", plan.hubs.size(), plan.hubs.stream().map(hub -> hub.name).collect(Collectors.joining(" -> "))));
+        return points;
+    }
+
+    void cancelForNewSearch(PathSession session) {
+        if (session.cancel()) {
+            sendMessage(prefix(session) + "Canceled existing path finder");
+        }
+    }
+
     private void startPathFinder(final OptionSet options, final BlockPos startIn, final BlockPos end) {
         checkY(startIn.getY());
         checkY(end.getY());
+        final boolean progressive = options.has("progressive");
+        if (progressive && (options.has("noraytrace") || options.has("network"))) {
+            throw new IllegalArgumentException("--progressive can't be used with --noraytrace or --network");
+        }
         final long seed = getSeed(options);
-
-        if (this.pathFinder != null) {
-            if (!this.pathFinder.future.isDone()) {
-                this.pathFinder.cancelled.set(true);
-                sendMessage("Canceled existing path finder");
-            }
-            pathFinder = null;
+        final List<Long> direct = routePoints(options, startIn, end);
+        final SegmentSizer.Settings sizing = SearchFlags.segmentSizing(options);
+        final long deadline = SearchFlags.deadline(options);
+        final String name = sessionName(options);
+        checkAdmission(name);
+        final PathSession session = session(name);
+
+        cancelForNewSearch(session);
+        session.activePath.clear();
+
+        final boolean raytrace = !options.has("noraytrace");
+        session.activePath.setSource(seed, raytrace);
+        final Map<Integer, Supplier<List<long[]>>> corridors = new HashMap<>();
+        final List<Long> network = options.has("network")
+            ? networkPoints(options, seed, direct.get(0), direct.get(direct.size() - 1), corridors)
+            : null;
+        final List<Long> points = network != null ? network : direct;
+        final Timing timing = network != null ? PathfinderMetrics.NETWORK_ROUTE
+            : progressive ? PathfinderMetrics.PROGRESSIVE_COARSE
+            : PathfinderMetrics.SEARCH_ROUTE;
+        final long t1 = System.currentTimeMillis();
+        final long startNanos = System.nanoTime();
+        // a progressive search shows the raw path first and raytraces it afterwards
+        session.pathFinder = startRoute(session, points, corridors, seed, raytrace && !progressive, sizing, deadline, false, 0, route -> {
+            final long t2 = System.currentTimeMillis();
+            timing.record(System.nanoTime() - startNanos);
+            final String legs = route.legCount() == 1 ? "1 leg" : route.legCount() + " legs";
+            final String context = route.getWarmLegs() == route.legCount() ? "warm" : route.getWarmLegs() == 0 ? "cold" : "partly warm";
+            final String cached = route.getCachedLegs() > 0 ? ", " + route.getCachedLegs() + " from cache" : "";
+            Minecraft.getMinecraft().addScheduledTask(() -> sendMessage(prefix(session) + String.format("Found %s in %.2f seconds (%s, %s context%s)",
+                progressive ? "coarse path" : "path", (t2 - t1) / 1000.0, legs, context, cached)));
+            PathFinderMod.getLogger().debug("Segment sizes (size:ms): {}", route.describeSegmentSizes());
+        });
+        if (progressive) {
+            session.refiner = new PathRefiner(this.scheduler, this.contextPool, seed, startNanos, msg -> sendMessage(prefix(session) + msg));
         }
-        resetRenderer();
+    }
 
-        final long ctx = NetherPathfinder.newContext(seed);
-        ConcurrentLinkedQueue<List<BlockPos>> queue = new ConcurrentLinkedQueue<>();
+    // knownLegs are legs by index whose path is already known and doesn't have to be searched
+    PathFinder startRoute(PathSession session, List<Long> points, Map<Integer, Supplier<List<long[]>>> knownLegs, long seed, boolean raytrace, SegmentSizer.Settings sizing, long deadline, boolean replan, int insertIndex, Consumer<RouteSearch> onFound) {
+        final SegmentQueue<LodSegment> queue = SegmentQueue.fromConfig();
         AtomicBoolean cancelled = new AtomicBoolean();
-        CompletableFuture<Boolean> future = CompletableFuture.supplyAsync(() -> {
-            final long t1 = System.currentTimeMillis();
-            BlockPos start = startIn;
-            PathSegment segment;
-            do {
-                segment = NetherPathfinder.pathFind(ctx, start.getX(), start.getY(), start.getZ(), end.getX(), end.getY(), end.getZ(), true, !options.has("noraytrace"), 10000);
-                if (cancelled.get()) {
-                    return false;
-                }
-                if (segment == null) {
-                    Minecraft.getMinecraft().addScheduledTask(() -> sendMessage("path finder returned null"));
-                    return false;
+        final RouteSearch route = new RouteSearch(points, raytrace, sizing, cancelled, queue);
+        knownLegs.forEach(route::setKnownLeg);
+        route.setDeadline(deadline);
+        final int traceId = this.tracer.request(seed, points, raytrace, sizing, deadline);
+        if (traceId != -1) {
+            route.setSegmentListener(packed -> this.tracer.segment(traceId, packed.length));
+        }
+        // real requests always win over the warm-up
+        this.warmer.preempt();
+        PathfinderMetrics.SEARCHES.incrementAndGet();
+        final long t1 = System.nanoTime();
+        CompletableFuture<PathSearch.Status> future = route.start(scheduler, PathfinderScheduler.Priority.INTERACTIVE, contextPool, pathCache, seed)
+            .thenApply(status -> {
+                switch (status) {
+                    case FOUND:
+                        onFound.accept(route);
+                        break;
+                    case TIMED_OUT:
+                        PathfinderMetrics.TIMEOUTS.incrementAndGet();
+                        final double seconds = (System.nanoTime() - t1) / 1e9;
+                        Minecraft.getMinecraft().addScheduledTask(() -> sendMessage(prefix(session) + String.format("Timed out after %.1f seconds, keeping the %d blocks found so far", seconds, Math.round(route.getLength()))));
+                        break;
+                    case CANCELLED:
+                        PathfinderMetrics.CANCELLATIONS.incrementAndGet();
+                        break;
+                    case NO_PATH:
+                        PathfinderMetrics.FAILURES.incrementAndGet();
+                        Minecraft.getMinecraft().addScheduledTask(() -> sendMessage(prefix(session) + "path finder returned null"));
+                        break;
                 }
-                final List<BlockPos> path = Arrays.stream(segment.packed).mapToObj(BlockPos::fromLong).collect(Collectors.toList());
-                queue.add(path);
-                start = BlockPos.fromLong(segment.packed[segment.packed.length - 1]);
-            } while (!segment.finished);
-            final long t2 = System.currentTimeMillis();
-            Minecraft.getMinecraft().addScheduledTask(() -> sendMessage(String.format("Found path in %.2f seconds", (t2 - t1) / 1000.0)));
-            return true;
-        }).exceptionally(ex -> {
-            ex.printStackTrace();
-            return false;
-        })
-        .whenCompleteAsync((res, ex) -> NetherPathfinder.freeContext(ctx));
+                return status;
+            }).exceptionally(ex -> {
+                PathfinderMetrics.FAILURES.incrementAndGet();
+                ex.printStackTrace();
+                return PathSearch.Status.FAILED;
+            });
+        if (traceId != -1) {
+            future.thenAccept(status -> this.tracer.end(traceId, status, route.getCachedLegs(), route.getWarmLegs()));
+        }
 
-        this.pathFinder = new PathFinder(queue, future, cancelled);
+        return new PathFinder(queue, future, cancelled, replan, insertIndex, route::isFirstLegWarm);
     }
 
     private class PathFind implements ICommand {
         PathFind(OptionParser parser) {
-            acceptPathfindFlags(parser);
+            SearchFlags.acceptRoute(parser);
         }
 
         @Override
@@ -230,7 +462,7 @@ public class ExamplePathfinderControl {
 
         @Override
         public List<String> optionHelp() {
-            return pathfindHelp();
+            return SearchFlags.routeHelp();
         }
 
         @Override
@@ -245,7 +477,7 @@ public class ExamplePathfinderControl {
 
     private class Thisway implements ICommand {
         public Thisway(OptionParser parser) {
-            acceptPathfindFlags(parser);
+            SearchFlags.acceptRoute(parser);
         }
         @Override
         public void accept(List<String> args, OptionSet options) {
@@ -272,7 +504,7 @@ public class ExamplePathfinderControl {
         }
         @Override
         public List<String> optionHelp() {
-            return pathfindHelp();
+            return SearchFlags.routeHelp();
         }
     }
 
@@ -330,7 +562,6 @@ public class ExamplePathfinderControl {
             }
             seeds.put(ip, seed);
             sendMessage("Set seed for " + ip);
-            PathFinderMod.writeSeedsToDisk(seeds);
         }
     }
 
@@ -339,21 +570,27 @@ public class ExamplePathfinderControl {
 
         @Override
         public String description() {
-            return "Stop the current pathfinding thread";
+            return "Stop searching and keep what was found so far";
         }
 
         @Override
         public List<String> usage() {
-            return Collections.emptyList();
+            return Arrays.asList(
+                "(every session)",
+                "<session>"
+            );
         }
 
         @Override
         public void accept(List<String> args, OptionSet options) {
-            if (pathFinder != null) {
-                pathFinder.cancelled.set(true);
-                pathFinder = null;
-                sendMessage("Canceled pathfinder");
-            } else {
+            int canceled = 0;
+            for (PathSession session : selectSessions(args)) {
+                if (session.cancel()) {
+                    sendMessage(prefix(session) + "Canceled pathfinder");
+                    canceled++;
+                }
+            }
+            if (canceled == 0) {
                 sendMessage("No pathfinder runing");
             }
         }
@@ -364,19 +601,36 @@ public class ExamplePathfinderControl {
 
         @Override
         public String description() {
-            return "Stop rendering the path";
+            return "Stop searching and rendering the path";
         }
 
         @Override
         public List<String> usage() {
-            return Collections.emptyList();
+            return Arrays.asList(
+                "(every session)",
+                "<session>"
+            );
         }
 
         @Override
         public void accept(List<String> args, OptionSet options) {
-            cancelExistingPathfinder();
-            resetRenderer();
+            for (PathSession session : selectSessions(args)) {
+                sessions.remove(session.name);
+                session.delete();
+            }
+        }
+    }
+
+    static Throwable rootCause(Throwable ex) {
+        while (ex.getCause() != null) ex = ex.getCause();
+        return ex;
+    }
+
+    static Path pathFile(String name) {
+        if (!name.matches("[A-Za-z0-9_-]+")) {
+            throw new IllegalArgumentException("Path names can only use letters, digits, _ and -");
         }
+        return PathFinderMod.PATHS_PATH.resolve(name + PathFile.EXTENSION);
     }
 
     void printHelp() {
@@ -402,33 +656,44 @@ public class ExamplePathfinderControl {
         if (msg.startsWith(";")) { // TODO customizable char
             event.setCanceled(true);
             addToChatHistory(msg); // forge is dumb
-            if (msg.length() > 1) {
-                final String cmd = msg.substring(1);
-                final String[] args0 = cmd.split(" +");
-
-                if (args0.length > 0) {
-                    Function<OptionParser, ICommand> command = commands.get(args0[0].toLowerCase());
-                    if (command != null) {
-                        final String[] args = Arrays.copyOfRange(args0, 1, args0.length);
-                        final OptionParser parser = new OptionParser();
-                        parser.allowsUnrecognizedOptions();
-                        try {
-                            final ICommand consumer = command.apply(parser);
-                            final OptionSet opts = parser.parse(args);
-                            consumer.accept((List<String>) opts.nonOptionArguments(), opts);
-                        } catch (Exception ex) {
-                            // input error
-                            sendMessage(ex.toString());
-                            // print stacktrace in case it's a bug
-                            ex.printStackTrace();
-                        }
-                    } else {
-                        sendMessage("Invalid command");
+            if (!this.ready.isDone()) {
+                sendMessage("Pathfinder is still starting, the command will run when it is ready");
+                this.ready.thenRun(() -> Minecraft.getMinecraft().addScheduledTask(() -> runCommand(msg)));
+            } else if (this.ready.isCompletedExceptionally()) {
+                sendMessage("Pathfinder failed to start, see the log");
+            } else {
+                runCommand(msg);
+            }
+        }
+    }
+
+    private void runCommand(String msg) {
+        if (msg.length() > 1) {
+            final String cmd = msg.substring(1);
+            final String[] args0 = cmd.split(" +");
+
+            if (args0.length > 0) {
+                Function<OptionParser, ICommand> command = commands.get(args0[0].toLowerCase());
+                if (command != null) {
+                    final String[] args = Arrays.copyOfRange(args0, 1, args0.length);
+                    final OptionParser parser = new OptionParser();
+                    parser.allowsUnrecognizedOptions();
+                    try {
+                        final ICommand consumer = command.apply(parser);
+                        final OptionSet opts = parser.parse(args);
+                        consumer.accept((List<String>) opts.nonOptionArguments(), opts);
+                    } catch (Exception ex) {
+                        // input error
+                        sendMessage(ex.toString());
+                        // print stacktrace in case it's a bug
+                        ex.printStackTrace();
                     }
+                } else {
+                    sendMessage("Invalid command");
                 }
-            } else {
-                printHelp();
             }
+        } else {
+            printHelp();
         }
     }
 
@@ -436,17 +701,38 @@ public class ExamplePathfinderControl {
         return Minecraft.getMinecraft().player.dimension == -1;
     }
 
+    // Only for servers with a known seed, guessing the seed would warm up the wrong context
+    private void warmUp() {
+        if (!PathFinderConfig.warmupOnNetherEntry) return;
+        final Long seed = this.seeds.get(getServerName());
+        if (seed == null) return;
+        final Entity player = Minecraft.getMinecraft().player;
+        this.warmer.start(seed, (int) player.posX, (int) player.posY, (int) player.posZ, player.rotationYaw);
+    }
+
     @SubscribeEvent
     public void onTick(TickEvent.ClientTickEvent event) {
-        if (this.pathFinder != null) {
-            boolean success = this.pathFinder.future.getNow(true);
-            if (!success) {
-                this.pathFinder = null;
-                this.renderList.clear();
-            } else {
-                List<BlockPos> segment = this.pathFinder.resultQueue.poll();
-                if (segment != null) {
-                    this.renderList.add(new PathRenderer(segment));
+        // fired at the start and the end of every tick, everything here should only happen once per tick
+        if (event.phase != TickEvent.Phase.END || !isReady()) return;
+        this.contextPool.evictExpired();
+        // all sessions share one ingest budget
+        final long start = System.nanoTime();
+        final WorldClient world = Minecraft.getMinecraft().world;
+        final boolean inNether = world != null && Minecraft.getMinecraft().player != null && isInNether();
+        if (inNether && !this.wasInNether) {
+            warmUp();
+        }
+        this.wasInNether = inNether;
+        final Entity player = Minecraft.getMinecraft().player;
+        // the index only looks this far around the player so following the path costs the same however long it is
+        final int offRoute = PathFinderConfig.offRouteBlocks;
+        final int trackDistance = offRoute > 0 ? offRoute : PathFinderConfig.pathIndexCellBlocks;
+        for (PathSession session : this.sessions.values()) {
+            session.tick(this.ingester, start);
+            if (inNether && session.isSettled()) {
+                session.validator.tick(session.activePath, world);
+                if (session.trackProgress(player.posX, player.posY, player.posZ, trackDistance) && offRoute > 0) {
+                    sendMessage(prefix(session) + "Left the path, use ;replan to get back on it");
                 }
             }
         }
@@ -454,15 +740,15 @@ public class ExamplePathfinderControl {
 
     @SubscribeEvent
     public void onRender(RenderWorldLastEvent event) {
-        if (!isInNether()) return;
-
-        if (!this.renderList.isEmpty()) {
-            PathRenderer.preRender();
-            GlStateManager.glLineWidth(1.f);
-            for (PathRenderer segment : this.renderList) {
-                segment.drawLine(event.getPartialTicks());
+        if (!isReady() || !isInNether()) return;
+
+        for (PathSession session : this.sessions.values()) {
+            if (!session.renderer.isEmpty()) {
+                PathRenderer.preRender();
+                GlStateManager.glLineWidth(1.f);
+                session.renderer.drawLines(event.getPartialTicks());
+                PathRenderer.postRender();
             }
-            PathRenderer.postRender();
         }
     }
 }
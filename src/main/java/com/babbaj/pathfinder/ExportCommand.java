@@ -0,0 +1,91 @@
+package com.babbaj.pathfinder;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import net.minecraft.client.Minecraft;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.babbaj.pathfinder.ExamplePathfinderControl.rootCause;
+import static com.babbaj.pathfinder.ExamplePathfinderControl.sendMessage;
+
+/**
+ * {@code ;export}, writes the path of a session to a {@link PathFile} in the background so {@code ;import} can show it
+ * again later.
+ */
+final class ExportCommand implements ExamplePathfinderControl.ICommand {
+    private final ExamplePathfinderControl control;
+
+    ExportCommand(ExamplePathfinderControl control, OptionParser parser) {
+        this.control = control;
+        parser.accepts("session").withRequiredArg();
+    }
+
+    @Override
+    public String description() {
+        return "Save the path to a file that ;import can load";
+    }
+
+    @Override
+    public List<String> usage() {
+        return Collections.singletonList("<name>");
+    }
+
+    @Override
+    public List<String> optionHelp() {
+        return Collections.singletonList("--session <name>  save the path of this session");
+    }
+
+    @Override
+    public void accept(List<String> args, OptionSet options) {
+        if (args.size() != 1) throw new IllegalArgumentException("Expected 1 argument");
+        final Path file = ExamplePathfinderControl.pathFile(args.get(0));
+        final PathSession session = this.control.sessions.get(ExamplePathfinderControl.sessionName(options));
+        if (session == null || session.activePath.isEmpty()) {
+            throw new IllegalStateException("No path to export");
+        }
+        if (!session.isSettled()) {
+            throw new IllegalStateException("The path is still being searched");
+        }
+        final ActivePath path = session.activePath;
+        final List<long[]> parts = new ArrayList<>(path.partCount());
+        for (int i = 0; i < path.partCount(); i++) {
+            parts.add(path.partPoints(i));
+        }
+        final long seed = path.getSeed();
+        final boolean raytrace = path.isRaytrace();
+        this.control.scheduler.submit(PathfinderScheduler.Priority.BACKGROUND, () -> {
+            try {
+                Files.createDirectories(file.getParent());
+                try (PathFile.Writer writer = new PathFile.Writer(Files.newOutputStream(file), seed, raytrace)) {
+                    for (long[] part : parts) {
+                        writer.writeSegment(part);
+                    }
+                    return writer.getPointCount();
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }).whenComplete((points, ex) -> Minecraft.getMinecraft().addScheduledTask(() -> {
+            if (ex != null) {
+                ex.printStackTrace();
+                sendMessage("Failed to export path: " + rootCause(ex));
+                return;
+            }
+            try {
+                final long bytes = Files.size(file);
+                final long packedBytes = points * Long.BYTES;
+                sendMessage(String.format("Exported %d points to %s: %d bytes, %d bytes as packed longs (%.1f%%)",
+                    points, file, bytes, packedBytes, 100.0 * bytes / packedBytes));
+            } catch (IOException ioEx) {
+                ioEx.printStackTrace();
+            }
+        }));
+    }
+}
@@ -0,0 +1,64 @@
+package com.babbaj.pathfinder;
+
+import java.util.Arrays;
+
+// Count, sum and max of every recorded value plus percentiles over the most recent values
+public class Histogram {
+    private static final int RESERVOIR_SIZE = 2048;
+
+    private final long[] recent = new long[RESERVOIR_SIZE];
+    private long count;
+    private long sum;
+    private long max;
+
+    public synchronized void record(long value) {
+        this.recent[(int) (this.count % RESERVOIR_SIZE)] = value;
+        this.count++;
+        this.sum += value;
+        this.max = Math.max(this.max, value);
+    }
+
+    public synchronized long getCount() {
+        return this.count;
+    }
+
+    public synchronized double getMean() {
+        return this.count == 0 ? 0 : this.sum / (double) this.count;
+    }
+
+    public synchronized long getMax() {
+        return this.max;
+    }
+
+    // Percentiles (0 to 100) of the recent values, in the same order they were asked for
+    public long[] percentiles(double... percentiles) {
+        final long[] sorted;
+        synchronized (this) {
+            sorted = Arrays.copyOf(this.recent, (int) Math.min(this.count, RESERVOIR_SIZE));
+        }
+        Arrays.sort(sorted);
+        final long[] out = new long[percentiles.length];
+        if (sorted.length == 0) return out;
+        for (int i = 0; i < percentiles.length; i++) {
+            final int index = (int) Math.ceil(percentiles[i] / 100.0 * sorted.length) - 1;
+            out[i] = sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+        }
+        return out;
+    }
+
+    // How a recorded value is shown
+    public double scale(long value) {
+        return value;
+    }
+
+    public String unit() {
+        return "";
+    }
+
+    @Override
+    public String toString() {
+        final long[] p = percentiles(50, 90, 99);
+        return String.format("n=%d mean=%.1f%s p50=%.1f p90=%.1f p99=%.1f max=%.1f", getCount(),
+            scale((long) getMean()), unit(), scale(p[0]), scale(p[1]), scale(p[2]), scale(getMax()));
+    }
+}
@@ -0,0 +1,102 @@
+package com.babbaj.pathfinder;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import net.minecraft.client.Minecraft;
+import net.minecraft.entity.Entity;
+import net.minecraft.util.math.BlockPos;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.babbaj.pathfinder.ExamplePathfinderControl.checkY;
+import static com.babbaj.pathfinder.ExamplePathfinderControl.sendMessage;
+
+/**
+ * {@code ;hub}, edits the hubs of the {@link RouteNetwork} of a seed. Every change starts searching the corridors that
+ * are missing because of it.
+ */
+final class HubCommand implements ExamplePathfinderControl.ICommand {
+    private final ExamplePathfinderControl control;
+
+    HubCommand(ExamplePathfinderControl control, OptionParser parser) {
+        this.control = control;
+        parser.accepts("seed").withRequiredArg();
+    }
+
+    @Override
+    public String description() {
+        return "Manage the hubs of the route network used by --network";
+    }
+
+    @Override
+    public List<String> usage() {
+        return Arrays.asList(
+            "add <name> [<x> <y> <z>] (at your position if there are no coords, moves the hub if it exists)",
+            "remove <name>",
+            "list",
+            "build (search the missing corridors in the background)",
+            "stop (stop searching corridors)",
+            "invalidate <name> (search the corridors of this hub again)"
+        );
+    }
+
+    @Override
+    public List<String> optionHelp() {
+        return Collections.singletonList("--seed <seed>");
+    }
+
+    @Override
+    public void accept(List<String> args, OptionSet options) {
+        if (args.isEmpty()) throw new IllegalArgumentException("Expected add, remove, list, build, stop or invalidate");
+        final RouteNetwork network = this.control.network(this.control.getSeed(options));
+        switch (args.get(0)) {
+            case "add": {
+                if (args.size() != 2 && args.size() != 5) throw new IllegalArgumentException("Expected add <name> [<x> <y> <z>]");
+                final Entity player = Minecraft.getMinecraft().player;
+                final BlockPos pos = args.size() == 5
+                    ? this.control.parsePosition(args.get(2), args.get(3), args.get(4))
+                    : new BlockPos((int) player.posX, (int) player.posY, (int) player.posZ);
+                checkY(pos.getY());
+                network.putHub(args.get(1), pos.getX(), pos.getY(), pos.getZ());
+                sendMessage(String.format("Hub %s is at %d %d %d", args.get(1), pos.getX(), pos.getY(), pos.getZ()));
+                this.control.buildNetwork(network);
+                break;
+            }
+            case "remove":
+                if (args.size() != 2) throw new IllegalArgumentException("Expected remove <name>");
+                if (!network.removeHub(args.get(1))) throw new IllegalArgumentException("No hub named " + args.get(1));
+                sendMessage("Removed hub " + args.get(1));
+                this.control.buildNetwork(network);
+                break;
+            case "list":
+                final List<RouteNetwork.Hub> hubs = network.getHubs();
+                sendMessage(String.format("%d hubs and %d corridors%s", hubs.size(), network.corridorCount(), network.isBuilding() ? ", searching corridors" : ""));
+                for (RouteNetwork.Hub hub : hubs) {
+                    sendMessage(String.format("%s: %d %d %d", hub.name, hub.x, hub.y, hub.z));
+                }
+                break;
+            case "build":
+                if (!this.control.buildNetwork(network)) {
+                    sendMessage("Already searching corridors");
+                } else if (!network.isBuilding()) {
+                    sendMessage("Every corridor has been searched");
+                }
+                break;
+            case "stop":
+                if (!network.isBuilding()) throw new IllegalArgumentException("Not searching corridors");
+                network.stopBuilding();
+                sendMessage("Stopped searching corridors");
+                break;
+            case "invalidate":
+                if (args.size() != 2) throw new IllegalArgumentException("Expected invalidate <name>");
+                if (network.getHub(args.get(1)) == null) throw new IllegalArgumentException("No hub named " + args.get(1));
+                sendMessage(String.format("Dropped %d corridors of %s", network.invalidate(args.get(1)), args.get(1)));
+                this.control.buildNetwork(network);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown hub command " + args.get(0));
+        }
+    }
+}
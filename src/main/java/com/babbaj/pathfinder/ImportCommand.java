@@ -0,0 +1,96 @@
+package com.babbaj.pathfinder;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import net.minecraft.client.Minecraft;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.babbaj.pathfinder.ExamplePathfinderControl.prefix;
+import static com.babbaj.pathfinder.ExamplePathfinderControl.rootCause;
+import static com.babbaj.pathfinder.ExamplePathfinderControl.sendMessage;
+
+/**
+ * {@code ;import}, shows a path saved by {@code ;export} in a session. It is read in the background and handed to the
+ * session like search results are.
+ */
+final class ImportCommand implements ExamplePathfinderControl.ICommand {
+    private final ExamplePathfinderControl control;
+
+    ImportCommand(ExamplePathfinderControl control, OptionParser parser) {
+        this.control = control;
+        parser.accepts("session").withRequiredArg();
+    }
+
+    @Override
+    public String description() {
+        return "Show a path that was saved with ;export";
+    }
+
+    @Override
+    public List<String> usage() {
+        return Collections.singletonList("<name>");
+    }
+
+    @Override
+    public List<String> optionHelp() {
+        return Collections.singletonList("--session <name>  show it in this session");
+    }
+
+    @Override
+    public void accept(List<String> args, OptionSet options) {
+        if (args.size() != 1) throw new IllegalArgumentException("Expected 1 argument");
+        final Path file = ExamplePathfinderControl.pathFile(args.get(0));
+        if (!Files.isReadable(file)) throw new IllegalArgumentException("No saved path named " + args.get(0));
+        final String name = ExamplePathfinderControl.sessionName(options);
+        this.control.checkAdmission(name);
+        final PathFile.Reader reader;
+        try {
+            reader = new PathFile.Reader(Files.newInputStream(file));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        final PathSession session = this.control.session(name);
+        this.control.cancelForNewSearch(session);
+        session.activePath.clear();
+        session.activePath.setSource(reader.seed, reader.raytrace);
+
+        // the segments go through the same queue as search results so a long path doesn't stall the client
+        final SegmentQueue<LodSegment> queue = SegmentQueue.fromConfig();
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        final long t1 = System.currentTimeMillis();
+        final CompletableFuture<PathSearch.Status> future = this.control.scheduler.submit(PathfinderScheduler.Priority.INTERACTIVE, () -> {
+            try (PathFile.Reader in = reader) {
+                long points = 0;
+                long[] packed;
+                while ((packed = in.nextSegment()) != null) {
+                    if (!queue.put(LodSegment.build(packed), cancelled)) return PathSearch.Status.CANCELLED;
+                    points += packed.length;
+                }
+                final long loaded = points;
+                Minecraft.getMinecraft().addScheduledTask(() -> sendMessage(prefix(session) + String.format("Imported %d points in %.2f seconds", loaded, (System.currentTimeMillis() - t1) / 1000.0)));
+                return PathSearch.Status.FOUND;
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }).exceptionally(ex -> {
+            ex.printStackTrace();
+            try {
+                // not closed yet if the task was never run
+                reader.close();
+            } catch (IOException closeEx) {
+                closeEx.printStackTrace();
+            }
+            Minecraft.getMinecraft().addScheduledTask(() -> sendMessage(prefix(session) + "Failed to import path: " + rootCause(ex)));
+            return PathSearch.Status.FAILED;
+        });
+        session.pathFinder = new PathFinder(queue, future, cancelled);
+    }
+}
@@ -0,0 +1,94 @@
+package com.babbaj.pathfinder;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A map that is kept in a json file. Changes are written behind: the first change schedules a write a moment later and
+ * every change until then goes into the same write. The file is written next to the real one and moved over it so a
+ * crash never leaves half a file, and whatever is still pending is written when the game exits.
+ */
+public class JsonStore<V> {
+    private static final long WRITE_DELAY_MILLIS = 2000;
+    private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "Pathfinder File Writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path path;
+    private final Type type;
+    // written from the client thread and read by the writer
+    private final Map<String, V> map = new ConcurrentHashMap<>();
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    // type is the type of the whole map, e.g. Map<String, Long>
+    public JsonStore(Path path, Type type) {
+        this.path = path;
+        this.type = type;
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "Pathfinder File Writer Shutdown"));
+    }
+
+    // Reads the file if there is one, a file that can't be read is left alone and the store starts empty
+    public void load() {
+        if (!Files.isReadable(this.path)) return;
+        try (Reader reader = Files.newBufferedReader(this.path, StandardCharsets.UTF_8)) {
+            final Map<String, V> loaded = new Gson().fromJson(new JsonReader(reader), this.type);
+            if (loaded != null) {
+                this.map.putAll(loaded);
+            }
+        } catch (IOException | JsonParseException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    public V get(String key) {
+        return this.map.get(key);
+    }
+
+    public void put(String key, V value) {
+        this.map.put(key, value);
+        if (!this.dirty.getAndSet(true)) {
+            WRITER.schedule(this::flush, WRITE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Adds the value without writing the file, for defaults that don't need to be saved
+    public void putDefault(String key, V value) {
+        this.map.putIfAbsent(key, value);
+    }
+
+    // Writes the file now if anything changed since it was last written
+    public synchronized void flush() {
+        if (!this.dirty.getAndSet(false)) return;
+        final String json = new GsonBuilder().setPrettyPrinting().create().toJson(this.map, this.type);
+        final Path tmp = this.path.resolveSibling(this.path.getFileName() + ".tmp");
+        try {
+            Files.write(tmp, json.getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(tmp, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, this.path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.babbaj.pathfinder;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+// A* over a BlockGrid that finds a way around something that blocks a short stretch of the path
+public final class LocalRepair {
+    private LocalRepair() {}
+
+    // Returns the corners of the way from start to goal, both included, or null if there is none inside the grid
+    public static long[] search(BlockGrid grid, long start, long goal) {
+        final int gx = PackedPos.x(goal), gy = PackedPos.y(goal), gz = PackedPos.z(goal);
+        final int startIndex = grid.index(PackedPos.x(start), PackedPos.y(start), PackedPos.z(start));
+        final int goalIndex = grid.index(gx, gy, gz);
+
+        final float[] cost = new float[grid.volume()];
+        Arrays.fill(cost, Float.POSITIVE_INFINITY);
+        final int[] cameFrom = new int[grid.volume()];
+        // entries are the estimated total cost in the high bits and the grid index in the low bits
+        final PriorityQueue<Long> open = new PriorityQueue<>();
+        cost[startIndex] = 0;
+        cameFrom[startIndex] = -1;
+        open.add(entry(heuristic(start, gx, gy, gz), startIndex));
+
+        while (!open.isEmpty()) {
+            final long top = open.poll();
+            final int index = (int) top;
+            if (index == goalIndex) {
+                return corners(grid, cameFrom, goalIndex);
+            }
+            final long pos = grid.posOf(index);
+            final int x = PackedPos.x(pos), y = PackedPos.y(pos), z = PackedPos.z(pos);
+            // skip entries that were improved on after they were queued
+            if (Float.intBitsToFloat((int) (top >>> 32)) > cost[index] + heuristic(pos, gx, gy, gz) + 1e-3f) continue;
+
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dz = -1; dz <= 1; dz++) {
+                        if ((dx | dy | dz) == 0) continue;
+                        final int nx = x + dx, ny = y + dy, nz = z + dz;
+                        if (!canMove(grid, x, y, z, dx, dy, dz, goalIndex)) continue;
+                        final int next = grid.index(nx, ny, nz);
+                        final float nextCost = cost[index] + (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+                        if (nextCost < cost[next]) {
+                            cost[next] = nextCost;
+                            cameFrom[next] = index;
+                            open.add(entry(nextCost + heuristic(PackedPos.pack(nx, ny, nz), gx, gy, gz), next));
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static long entry(float estimate, int index) {
+        return ((long) Float.floatToIntBits(estimate) << 32) | index;
+    }
+
+    private static float heuristic(long pos, int gx, int gy, int gz) {
+        final double dx = PackedPos.x(pos) - gx;
+        final double dy = PackedPos.y(pos) - gy;
+        final double dz = PackedPos.z(pos) - gz;
+        return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    // Diagonal moves may not cut through the corners of solid blocks
+    private static boolean canMove(BlockGrid grid, int x, int y, int z, int dx, int dy, int dz, int goalIndex) {
+        if (!grid.contains(x + dx, y + dy, z + dz)) return false;
+        // the goal is on the old path and may be right next to the obstruction
+        if (grid.index(x + dx, y + dy, z + dz) == goalIndex) return true;
+        for (int mask = 1; mask < 8; mask++) {
+            final int mx = (mask & 1) != 0 ? dx : 0;
+            final int my = (mask & 2) != 0 ? dy : 0;
+            final int mz = (mask & 4) != 0 ? dz : 0;
+            if ((mx | my | mz) == 0) continue;
+            if (grid.isSolid(x + mx, y + my, z + mz)) return false;
+        }
+        return true;
+    }
+
+    // Walks back from the goal and only keeps the points where the direction changes
+    private static long[] corners(BlockGrid grid, int[] cameFrom, int goalIndex) {
+        int length = 0;
+        for (int i = goalIndex; i != -1; i = cameFrom[i]) length++;
+        final long[] cells = new long[length];
+        for (int i = goalIndex, n = length - 1; i != -1; i = cameFrom[i], n--) {
+            cells[n] = grid.posOf(i);
+        }
+        final long[] out = new long[cells.length];
+        int count = 0;
+        for (int i = 0; i < cells.length; i++) {
+            if (i > 0 && i < cells.length - 1 && direction(cells[i - 1], cells[i]) == direction(cells[i], cells[i + 1])) continue;
+            out[count++] = cells[i];
+        }
+        return Arrays.copyOf(out, count);
+    }
+
+    private static int direction(long a, long b) {
+        return (PackedPos.x(b) - PackedPos.x(a) + 1) * 9 + (PackedPos.y(b) - PackedPos.y(a) + 1) * 3 + (PackedPos.z(b) - PackedPos.z(a) + 1);
+    }
+}
@@ -0,0 +1,112 @@
+package com.babbaj.pathfinder;
+
+/**
+ * A path segment together with simplified copies of it for drawing from further away. Every level is split into the same
+ * pieces so the renderer can pick a level for each piece on its own, pieces share their end points with their neighbours
+ * at every level.
+ */
+public final class LodSegment {
+    public static final int PIECE_VERTICES = 256;
+    // allowed error in blocks for each level, level 0 is the path exactly as the search returned it
+    public static final double[] LEVEL_TOLERANCES = {0, 1, 4, 16};
+    public static final int LEVELS = LEVEL_TOLERANCES.length;
+
+    // points of every level
+    public final long[][] levels;
+    // index of the first point of every piece, for each level
+    public final int[][] pieceStarts;
+
+    private LodSegment(long[][] levels, int[][] pieceStarts) {
+        this.levels = levels;
+        this.pieceStarts = pieceStarts;
+    }
+
+    // Simplifies the path, this is meant to be done on the search thread
+    public static LodSegment build(long[] packed) {
+        final int pieces = packed.length <= 1 ? 1 : (packed.length - 2) / (PIECE_VERTICES - 1) + 1;
+        final double[] importance = new double[packed.length];
+        final int[] fullStarts = new int[pieces];
+        for (int k = 0; k < pieces; k++) {
+            final int from = k * (PIECE_VERTICES - 1);
+            fullStarts[k] = from;
+            PathSimplifier.computeImportance(packed, from, Math.min(packed.length - 1, from + PIECE_VERTICES - 1), importance);
+        }
+
+        final long[][] levels = new long[LEVELS][];
+        final int[][] pieceStarts = new int[LEVELS][];
+        levels[0] = packed;
+        pieceStarts[0] = fullStarts;
+        for (int level = 1; level < LEVELS; level++) {
+            final double tolerance = LEVEL_TOLERANCES[level];
+            int kept = 0;
+            for (double value : importance) {
+                if (value > tolerance) kept++;
+            }
+            final long[] points = new long[kept];
+            final int[] starts = new int[pieces];
+            int n = 0;
+            int piece = 0;
+            for (int i = 0; i < packed.length; i++) {
+                if (importance[i] > tolerance) {
+                    // piece boundaries are always kept
+                    if (piece < pieces && fullStarts[piece] == i) {
+                        starts[piece++] = n;
+                    }
+                    points[n++] = packed[i];
+                }
+            }
+            levels[level] = points;
+            pieceStarts[level] = starts;
+        }
+        return new LodSegment(levels, pieceStarts);
+    }
+
+    // Joins consecutive segments, a point shared by the end of one and the start of the next is only kept once
+    public static LodSegment concat(LodSegment[] parts) {
+        if (parts.length == 1) return parts[0];
+        final long[][] levels = new long[LEVELS][];
+        final int[][] pieceStarts = new int[LEVELS][];
+        for (int level = 0; level < LEVELS; level++) {
+            int length = 0;
+            int pieces = 0;
+            long last = 0;
+            for (int i = 0; i < parts.length; i++) {
+                final long[] points = parts[i].levels[level];
+                length += points.length - (i > 0 && points[0] == last ? 1 : 0);
+                pieces += parts[i].pieceStarts[level].length;
+                last = points[points.length - 1];
+            }
+            final long[] merged = new long[length];
+            final int[] starts = new int[pieces];
+            int offset = 0;
+            int piece = 0;
+            for (int i = 0; i < parts.length; i++) {
+                final long[] points = parts[i].levels[level];
+                final int skip = i > 0 && points[0] == merged[offset - 1] ? 1 : 0;
+                for (int start : parts[i].pieceStarts[level]) {
+                    starts[piece++] = offset - skip + start;
+                }
+                System.arraycopy(points, skip, merged, offset, points.length - skip);
+                offset += points.length - skip;
+            }
+            levels[level] = merged;
+            pieceStarts[level] = starts;
+        }
+        return new LodSegment(levels, pieceStarts);
+    }
+
+    public long[] full() {
+        return this.levels[0];
+    }
+
+    public int pieceCount() {
+        return this.pieceStarts[0].length;
+    }
+
+    // Index of the last point of the piece in the given level
+    public int pieceEnd(int level, int piece) {
+        final int[] starts = this.pieceStarts[level];
+        return piece + 1 < starts.length ? starts[piece + 1] : this.levels[level].length - 1;
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.babbaj.pathfinder;
+
+/**
+ * Picks the level of detail every range of a {@link PathBuffer} is drawn with for one frame, or that it isn't drawn
+ * because it is outside the view frustum or further away than the render distance. The frustum is passed in as plain
+ * planes, the same ones Minecraft's ClippingHelper uses, so none of this needs OpenGL.
+ */
+public final class LodSelector implements PathBuffer.LevelSelector {
+    private final double cameraX, cameraY, cameraZ;
+    private final double maxDistanceSq;
+    private final double distancePerBlockError;
+    // a, b, c, d of every plane relative to the camera, a box is outside if all its corners are on the negative side of
+    // one plane. Null draws everything that is close enough
+    private final float[][] planes;
+
+    public LodSelector(double cameraX, double cameraY, double cameraZ, double maxDistance, double distancePerBlockError, float[][] planes) {
+        this.cameraX = cameraX;
+        this.cameraY = cameraY;
+        this.cameraZ = cameraZ;
+        this.maxDistanceSq = maxDistance * maxDistance;
+        this.distancePerBlockError = distancePerBlockError;
+        this.planes = planes;
+    }
+
+    @Override
+    public int select(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        final double distanceSq = distanceSq(minX, minY, minZ, maxX, maxY, maxZ);
+        if (distanceSq > this.maxDistanceSq) return -1;
+        // a range covers its blocks, so it ends one past its largest coordinate
+        if (!isBoxInFrustum(minX - this.cameraX, minY - this.cameraY, minZ - this.cameraZ, maxX + 1 - this.cameraX, maxY + 1 - this.cameraY, maxZ + 1 - this.cameraZ)) {
+            return -1;
+        }
+        return levelForDistance(Math.sqrt(distanceSq), this.distancePerBlockError);
+    }
+
+    // Picks the coarsest level whose error is still small enough at this distance
+    static int levelForDistance(double distance, double distancePerBlockError) {
+        if (distancePerBlockError <= 0) return 0;
+        int level = 0;
+        while (level + 1 < LodSegment.LEVELS && distance >= LodSegment.LEVEL_TOLERANCES[level + 1] * distancePerBlockError) {
+            level++;
+        }
+        return level;
+    }
+
+    // Squared distance from the camera to the closest point of the blocks
+    double distanceSq(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        final double dx = Math.max(0, Math.max(minX - this.cameraX, this.cameraX - (maxX + 1)));
+        final double dy = Math.max(0, Math.max(minY - this.cameraY, this.cameraY - (maxY + 1)));
+        final double dz = Math.max(0, Math.max(minZ - this.cameraZ, this.cameraZ - (maxZ + 1)));
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    // Coordinates are relative to the camera
+    boolean isBoxInFrustum(double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+        if (this.planes == null) return true;
+        for (float[] plane : this.planes) {
+            if (dot(plane, minX, minY, minZ) <= 0 && dot(plane, maxX, minY, minZ) <= 0
+                && dot(plane, minX, maxY, minZ) <= 0 && dot(plane, maxX, maxY, minZ) <= 0
+                && dot(plane, minX, minY, maxZ) <= 0 && dot(plane, maxX, minY, maxZ) <= 0
+                && dot(plane, minX, maxY, maxZ) <= 0 && dot(plane, maxX, maxY, maxZ) <= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double dot(float[] plane, double x, double y, double z) {
+        return plane[0] * x + plane[1] * y + plane[2] * z + plane[3];
+    }
+}
@@ -0,0 +1,153 @@
+package com.babbaj.pathfinder;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import net.minecraft.client.Minecraft;
+import net.minecraft.util.math.BlockPos;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static com.babbaj.pathfinder.ExamplePathfinderControl.checkY;
+import static com.babbaj.pathfinder.ExamplePathfinderControl.prefix;
+import static com.babbaj.pathfinder.ExamplePathfinderControl.sendMessage;
+
+/**
+ * {@code ;nearest}, searches towards several targets with a {@link NearestSearch} and shows the shortest path. Target
+ * lists can be saved under a name and searched again with {@code --set}.
+ */
+final class NearestCommand implements ExamplePathfinderControl.ICommand {
+    private final ExamplePathfinderControl control;
+
+    NearestCommand(ExamplePathfinderControl control, OptionParser parser) {
+        this.control = control;
+        SearchFlags.accept(parser);
+        parser.accepts("parallel").withRequiredArg();
+        parser.accepts("set").withRequiredArg();
+        parser.accepts("save").withRequiredArg();
+    }
+
+    @Override
+    public String description() {
+        return "Pathfind to whichever of the targets has the shortest path";
+    }
+
+    @Override
+    public List<String> usage() {
+        return Arrays.asList(
+            "<x> <y> <z> [<x> <y> <z>...]",
+            "--set <name> (the targets saved under this name)",
+            "--save <name> <x> <y> <z> [<x> <y> <z>...] (save the targets under a name without searching)"
+        );
+    }
+
+    @Override
+    public List<String> optionHelp() {
+        final List<String> help = new ArrayList<>(SearchFlags.help());
+        help.add("--parallel <n>  search this many targets at once");
+        return help;
+    }
+
+    @Override
+    public void accept(List<String> args, OptionSet options) {
+        final List<BlockPos> targets = new ArrayList<>();
+        if (options.has("set")) {
+            if (!args.isEmpty()) throw new IllegalArgumentException("Expected no coordinates with --set");
+            final String set = (String) options.valueOf("set");
+            final List<int[]> saved = this.control.targetSets.get(set);
+            if (saved == null) throw new IllegalArgumentException("No targets saved as " + set);
+            for (int[] pos : saved) {
+                targets.add(new BlockPos(pos[0], pos[1], pos[2]));
+            }
+        } else {
+            if (args.isEmpty() || args.size() % 3 != 0) throw new IllegalArgumentException("Expected x y z for every target");
+            for (int i = 0; i < args.size(); i += 3) {
+                targets.add(this.control.parsePosition(args.get(i), args.get(i + 1), args.get(i + 2)));
+            }
+        }
+        for (BlockPos target : targets) {
+            checkY(target.getY());
+        }
+        if (options.has("save")) {
+            final String set = (String) options.valueOf("save");
+            this.control.targetSets.put(set, targets.stream().map(pos -> new int[] {pos.getX(), pos.getY(), pos.getZ()}).collect(Collectors.toList()));
+            sendMessage("Saved " + targets.size() + " targets as " + set);
+            return;
+        }
+        start(options, Minecraft.getMinecraft().player.getPosition(), targets);
+    }
+
+    private void start(final OptionSet options, final BlockPos startIn, final List<BlockPos> targets) {
+        checkY(startIn.getY());
+        final long seed = this.control.getSeed(options);
+        final SegmentSizer.Settings sizing = SearchFlags.segmentSizing(options);
+        final long deadline = SearchFlags.deadline(options);
+        final int parallel = options.has("parallel") ? Integer.parseInt((String) options.valueOf("parallel")) : PathFinderConfig.nearestMaxParallel;
+        if (parallel <= 0) throw new IllegalArgumentException("Parallel searches must be positive");
+        final String name = ExamplePathfinderControl.sessionName(options);
+        this.control.checkAdmission(name);
+        final PathSession session = this.control.session(name);
+
+        this.control.cancelForNewSearch(session);
+        session.activePath.clear();
+
+        final boolean raytrace = !options.has("noraytrace");
+        session.activePath.setSource(seed, raytrace);
+        final List<Long> points = targets.stream().map(pos -> PackedPos.pack(pos.getX(), pos.getY(), pos.getZ())).collect(Collectors.toList());
+        final SegmentQueue<LodSegment> queue = SegmentQueue.fromConfig();
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        final NearestSearch search = new NearestSearch(PackedPos.pack(startIn.getX(), startIn.getY(), startIn.getZ()), points, raytrace, sizing, parallel, cancelled);
+        search.setDeadline(deadline);
+        this.control.warmer.preempt();
+        PathfinderMetrics.SEARCHES.incrementAndGet();
+        final long t1 = System.currentTimeMillis();
+        final CompletableFuture<PathSearch.Status> future = search.start(this.control.scheduler, this.control.contextPool, seed).thenCompose(winner -> {
+            if (winner == null) {
+                if (cancelled.get()) {
+                    PathfinderMetrics.CANCELLATIONS.incrementAndGet();
+                    return CompletableFuture.completedFuture(PathSearch.Status.CANCELLED);
+                }
+                if (search.isTimedOut()) {
+                    PathfinderMetrics.TIMEOUTS.incrementAndGet();
+                    final double seconds = (System.currentTimeMillis() - t1) / 1000.0;
+                    final NearestSearch.Candidate partial = search.getBestPartial();
+                    if (partial == null) {
+                        Minecraft.getMinecraft().addScheduledTask(() -> sendMessage(prefix(session) + String.format("Timed out after %.1f seconds and %d of %d targets without finding anything",
+                            seconds, search.getStarted(), targets.size())));
+                        return CompletableFuture.completedFuture(PathSearch.Status.TIMED_OUT);
+                    }
+                    Minecraft.getMinecraft().addScheduledTask(() -> sendMessage(prefix(session) + String.format("Timed out after %.1f seconds and %d of %d targets, keeping the %d blocks found towards target %d",
+                        seconds, search.getStarted(), targets.size(), Math.round(partial.getLength()), partial.index + 1)));
+                    return show(partial, queue, cancelled, PathSearch.Status.TIMED_OUT);
+                }
+                PathfinderMetrics.FAILURES.incrementAndGet();
+                Minecraft.getMinecraft().addScheduledTask(() -> sendMessage(prefix(session) + "No path to any of the targets"));
+                return CompletableFuture.completedFuture(PathSearch.Status.NO_PATH);
+            }
+            final long t2 = System.currentTimeMillis();
+            final BlockPos target = targets.get(winner.index);
+            Minecraft.getMinecraft().addScheduledTask(() -> sendMessage(prefix(session) + String.format("Nearest is target %d at %d %d %d, %d blocks, found in %.2f seconds (searched %d of %d targets)",
+                winner.index + 1, target.getX(), target.getY(), target.getZ(), Math.round(winner.getLength()), (t2 - t1) / 1000.0, search.getStarted(), targets.size())));
+            return show(winner, queue, cancelled, PathSearch.Status.FOUND);
+        }).exceptionally(ex -> {
+            PathfinderMetrics.FAILURES.incrementAndGet();
+            ex.printStackTrace();
+            return PathSearch.Status.FAILED;
+        });
+        session.pathFinder = new PathFinder(queue, future, cancelled);
+    }
+
+    // Only one path is shown, it was already found so it just has to be handed to the renderer
+    private CompletableFuture<PathSearch.Status> show(NearestSearch.Candidate candidate, SegmentQueue<LodSegment> queue, AtomicBoolean cancelled, PathSearch.Status status) {
+        return this.control.scheduler.submit(PathfinderScheduler.Priority.INTERACTIVE, () -> {
+            for (long[] segment : candidate.getSegments()) {
+                if (!queue.put(LodSegment.build(segment), cancelled)) return PathSearch.Status.CANCELLED;
+            }
+            return status;
+        });
+    }
+}
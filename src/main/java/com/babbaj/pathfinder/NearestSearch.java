@@ -0,0 +1,187 @@
+package com.babbaj.pathfinder;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Searches from one start to several targets to find the target with the shortest path. Targets are searched closest
+ * first, at most a few at a time. The straight line to a target is a lower bound on the length of its path, and once part
+ * of a path is found the length so far plus the straight line from its end is a better one. A search stops as soon as
+ * its bound is longer than a path that was already found, and nothing new is started once no target can beat it.
+ */
+public class NearestSearch {
+    private final long start;
+    private final boolean raytrace;
+    private final SegmentSizer.Settings sizing;
+    private final AtomicBoolean cancelled;
+    private final int parallel;
+    private final List<Candidate> candidates = new ArrayList<>();
+    // candidates by their straight line distance, the ones before next have been started or skipped
+    private final List<Candidate> order;
+    private int next;
+    private int running;
+    private int started;
+    private Candidate best;
+    private boolean timedOut;
+    private long deadline = Long.MAX_VALUE;
+    private final CompletableFuture<Candidate> result = new CompletableFuture<>();
+
+    public static final class Candidate {
+        // position in the list of targets that was given
+        public final int index;
+        public final long target;
+        final AtomicBoolean stopped = new AtomicBoolean();
+        // only used by the thread searching it until it is done
+        final List<long[]> segments = new ArrayList<>();
+        double length;
+        volatile double lowerBound;
+        // null until the search is done or skipped
+        volatile PathSearch.Status status;
+
+        Candidate(int index, long target, double lowerBound) {
+            this.index = index;
+            this.target = target;
+            this.lowerBound = lowerBound;
+        }
+
+        // The path that was found, only valid once the search is done
+        public List<long[]> getSegments() {
+            return this.segments;
+        }
+
+        public double getLength() {
+            return this.length;
+        }
+
+        public PathSearch.Status getStatus() {
+            return this.status;
+        }
+    }
+
+    public NearestSearch(long start, List<Long> targets, boolean raytrace, SegmentSizer.Settings sizing, int parallel, AtomicBoolean cancelled) {
+        if (targets.isEmpty()) throw new IllegalArgumentException("No targets to search");
+        this.start = start;
+        this.raytrace = raytrace;
+        this.sizing = sizing;
+        this.parallel = Math.max(1, parallel);
+        this.cancelled = cancelled;
+        for (int i = 0; i < targets.size(); i++) {
+            this.candidates.add(new Candidate(i, targets.get(i), ActivePath.distance(start, targets.get(i))));
+        }
+        this.order = new ArrayList<>(this.candidates);
+        this.order.sort(Comparator.comparingDouble(c -> c.lowerBound));
+    }
+
+    // System.nanoTime() by which every search has to be done
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    // Every target in the order they were given
+    public List<Candidate> getCandidates() {
+        return this.candidates;
+    }
+
+    // Number of targets that were searched, the others couldn't have been closer than a path that was found
+    public synchronized int getStarted() {
+        return this.started;
+    }
+
+    // True if the deadline stopped a search or kept one from starting, valid once the result is complete
+    public synchronized boolean isTimedOut() {
+        return this.timedOut;
+    }
+
+    // The search that was stopped by the deadline closest to its target, or null if none of them found anything. Its
+    // path only goes part of the way, valid once the result is complete
+    public synchronized Candidate getBestPartial() {
+        Candidate partial = null;
+        for (Candidate candidate : this.candidates) {
+            if (candidate.status == PathSearch.Status.TIMED_OUT && !candidate.segments.isEmpty()
+                && (partial == null || candidate.lowerBound < partial.lowerBound)) {
+                partial = candidate;
+            }
+        }
+        return partial;
+    }
+
+    // Completes with the target that has the shortest path, or null if none was found
+    public CompletableFuture<Candidate> start(PathfinderScheduler scheduler, ContextPool pool, long seed) {
+        synchronized (this) {
+            startMore(scheduler, pool, seed);
+        }
+        return this.result;
+    }
+
+    private void startMore(PathfinderScheduler scheduler, ContextPool pool, long seed) {
+        while (this.running < this.parallel && this.next < this.order.size() && !this.cancelled.get()) {
+            final Candidate candidate = this.order.get(this.next++);
+            if (this.best != null && candidate.lowerBound >= this.best.length) {
+                candidate.status = PathSearch.Status.CANCELLED;
+                continue;
+            }
+            if (this.deadline != Long.MAX_VALUE && System.nanoTime() - this.deadline >= 0) {
+                // it would stop before its first segment
+                candidate.status = PathSearch.Status.TIMED_OUT;
+                this.timedOut = true;
+                continue;
+            }
+            this.running++;
+            this.started++;
+            final SegmentSizer sizer = new SegmentSizer(this.sizing);
+            sizer.setDeadline(this.deadline);
+            // creating a context can take a while so it is done on the search thread and not under the lock
+            scheduler.submit(PathfinderScheduler.Priority.INTERACTIVE, () -> {
+                try (ContextPool.Lease lease = pool.acquire(seed)) {
+                    return PathSearch.run(lease, this.start, candidate.target, this.raytrace, sizer, candidate.stopped, packed -> accept(candidate, packed));
+                }
+            }).whenComplete((status, ex) -> {
+                if (ex != null) ex.printStackTrace();
+                finished(candidate, ex != null ? PathSearch.Status.FAILED : status, scheduler, pool, seed);
+            });
+        }
+        if (this.result.isDone()) return;
+        if (this.running == 0) {
+            this.result.complete(this.cancelled.get() ? null : this.best);
+        } else if (this.best != null && !canBeBeaten(this.best)) {
+            // the searches that are still running were told to stop but there's no need to wait for them
+            this.result.complete(this.best);
+        }
+    }
+
+    private boolean canBeBeaten(Candidate best) {
+        for (Candidate candidate : this.candidates) {
+            if (candidate.status == null && candidate.lowerBound < best.length) return true;
+        }
+        return false;
+    }
+
+    private boolean accept(Candidate candidate, long[] packed) {
+        if (this.cancelled.get()) return false;
+        candidate.segments.add(packed);
+        candidate.length += ActivePath.length(packed);
+        candidate.lowerBound = candidate.length + ActivePath.distance(packed[packed.length - 1], candidate.target);
+        synchronized (this) {
+            return this.best == null || candidate.lowerBound < this.best.length;
+        }
+    }
+
+    private synchronized void finished(Candidate candidate, PathSearch.Status status, PathfinderScheduler scheduler, ContextPool pool, long seed) {
+        this.running--;
+        candidate.status = status;
+        if (status == PathSearch.Status.TIMED_OUT) this.timedOut = true;
+        if (status == PathSearch.Status.FOUND && (this.best == null || candidate.length < this.best.length)) {
+            this.best = candidate;
+            // the ones that can't be shorter anymore stop at their next segment
+            for (Candidate other : this.candidates) {
+                if (other.status == null && other.lowerBound >= candidate.length) {
+                    other.stopped.set(true);
+                }
+            }
+        }
+        startMore(scheduler, pool, seed);
+    }
+}
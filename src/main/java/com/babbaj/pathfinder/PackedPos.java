@@ -0,0 +1,39 @@
+package com.babbaj.pathfinder;
+
+// Accessors for positions packed the same way as BlockPos.toLong, so paths can be read without allocating a BlockPos per block
+public final class PackedPos {
+    private static final int NUM_X_BITS = 26;
+    private static final int NUM_Z_BITS = NUM_X_BITS;
+    private static final int NUM_Y_BITS = 64 - NUM_X_BITS - NUM_Z_BITS;
+    private static final int Y_SHIFT = NUM_Z_BITS;
+    private static final int X_SHIFT = Y_SHIFT + NUM_Y_BITS;
+    private static final long X_MASK = (1L << NUM_X_BITS) - 1L;
+    private static final long Y_MASK = (1L << NUM_Y_BITS) - 1L;
+    private static final long Z_MASK = (1L << NUM_Z_BITS) - 1L;
+
+    private PackedPos() {}
+
+    public static int x(long packed) {
+        return (int) (packed << (64 - X_SHIFT - NUM_X_BITS) >> (64 - NUM_X_BITS));
+    }
+
+    public static int y(long packed) {
+        return (int) (packed << (64 - Y_SHIFT - NUM_Y_BITS) >> (64 - NUM_Y_BITS));
+    }
+
+    public static int z(long packed) {
+        return (int) (packed << (64 - NUM_Z_BITS) >> (64 - NUM_Z_BITS));
+    }
+
+    public static long pack(int x, int y, int z) {
+        return ((long) x & X_MASK) << X_SHIFT | ((long) y & Y_MASK) << Y_SHIFT | ((long) z & Z_MASK);
+    }
+
+    public static long chunkKey(long packed) {
+        return chunkKey(x(packed) >> 4, z(packed) >> 4);
+    }
+
+    public static long chunkKey(int chunkX, int chunkZ) {
+        return (long) chunkX << 32 | (chunkZ & 0xFFFFFFFFL);
+    }
+}
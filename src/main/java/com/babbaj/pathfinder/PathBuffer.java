@@ -0,0 +1,297 @@
+package com.babbaj.pathfinder;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Client side copy of the vertex buffer that every path segment is appended to. Segments are stored as the pieces of a
+ * {@link LodSegment}, each piece is a draw range with its own bounding box and one copy per level of detail so it can be
+ * culled and simplified individually. Every appended segment gets a slot id that it can be removed with later, removed
+ * vertices are left in place until enough of the buffer is unused to compact it. This class doesn't touch OpenGL,
+ * {@link PathRenderer} uploads whatever changed since the last frame.
+ */
+public class PathBuffer {
+    public static final int VERTEX_BYTES = 3 * 4;
+    private static final int LEVELS = LodSegment.LEVELS;
+    private static final int INITIAL_VERTICES = 4096;
+
+    private ByteBuffer vertices;
+    private int vertexCount;
+
+    // vertices are stored relative to the first one that was added so floats keep their precision
+    private boolean hasOrigin;
+    private int originX;
+    private int originY;
+    private int originZ;
+
+    private int ranges;
+    // first vertex and vertex count of every range at every level
+    private int[] rangeFirst = new int[64 * LEVELS];
+    private int[] rangeCount = new int[64 * LEVELS];
+    // minX, minY, minZ, maxX, maxY, maxZ of every range in world coordinates
+    private int[] rangeBounds = new int[64 * 6];
+    private final int[] levelBase = new int[LEVELS];
+
+    // removed slots are null
+    private final List<Slot> slots = new ArrayList<>();
+    private int wastedVertices;
+
+    // span of vertices that changed since the last upload
+    private int dirtyFrom = Integer.MAX_VALUE;
+    private int dirtyTo;
+    private boolean reallocated = true;
+
+    private static final class Slot {
+        int firstVertex;
+        int vertexCount;
+        int firstRange;
+        int rangeCount;
+    }
+
+    public interface LevelSelector {
+        // Returns the level of detail to draw a range with, or -1 to not draw it
+        int select(int minX, int minY, int minZ, int maxX, int maxY, int maxZ);
+    }
+
+    public PathBuffer() {
+        this.vertices = allocate(INITIAL_VERTICES * VERTEX_BYTES);
+    }
+
+    private static ByteBuffer allocate(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+
+    // Appends every level of a segment, each piece becomes a new line strip. Returns the slot of the segment
+    public int append(LodSegment segment) {
+        final long[] full = segment.full();
+        if (full.length == 0) return -1;
+        if (!this.hasOrigin) {
+            this.hasOrigin = true;
+            this.originX = PackedPos.x(full[0]);
+            this.originY = PackedPos.y(full[0]);
+            this.originZ = PackedPos.z(full[0]);
+        }
+        int total = 0;
+        for (long[] points : segment.levels) total += points.length;
+        final int first = this.vertexCount;
+        ensureVertexCapacity(first + total);
+        for (int level = 0; level < LEVELS; level++) {
+            this.levelBase[level] = this.vertexCount;
+            writeVertices(segment.levels[level], this.vertexCount);
+            this.vertexCount += segment.levels[level].length;
+        }
+        markDirty(first, this.vertexCount);
+
+        final Slot slot = new Slot();
+        slot.firstVertex = first;
+        slot.vertexCount = total;
+        slot.firstRange = this.ranges;
+        slot.rangeCount = segment.pieceCount();
+        for (int piece = 0; piece < segment.pieceCount(); piece++) {
+            addRange(segment, piece);
+        }
+        this.slots.add(slot);
+        return this.slots.size() - 1;
+    }
+
+    // Stops drawing the segment in this slot
+    public void remove(int id) {
+        final Slot slot = id >= 0 && id < this.slots.size() ? this.slots.get(id) : null;
+        if (slot == null) return;
+        this.slots.set(id, null);
+        for (int r = slot.firstRange; r < slot.firstRange + slot.rangeCount; r++) {
+            Arrays.fill(this.rangeCount, r * LEVELS, (r + 1) * LEVELS, 0);
+        }
+        this.wastedVertices += slot.vertexCount;
+        if (this.wastedVertices > INITIAL_VERTICES && this.wastedVertices * 2 > this.vertexCount) {
+            compact();
+        }
+    }
+
+    // Moves the remaining segments to the front of the buffer, the whole buffer has to be uploaded again after this
+    private void compact() {
+        final ByteBuffer compacted = allocate(this.vertices.capacity());
+        int vertex = 0;
+        int range = 0;
+        for (Slot slot : this.slots) {
+            if (slot == null) continue;
+            final ByteBuffer src = slice(slot.firstVertex, slot.firstVertex + slot.vertexCount);
+            ((Buffer) compacted).position(vertex * VERTEX_BYTES);
+            compacted.put(src);
+            final int shift = vertex - slot.firstVertex;
+            for (int r = slot.firstRange; r < slot.firstRange + slot.rangeCount; r++, range++) {
+                for (int level = 0; level < LEVELS; level++) {
+                    this.rangeFirst[range * LEVELS + level] = this.rangeFirst[r * LEVELS + level] + shift;
+                    this.rangeCount[range * LEVELS + level] = this.rangeCount[r * LEVELS + level];
+                }
+                System.arraycopy(this.rangeBounds, r * 6, this.rangeBounds, range * 6, 6);
+            }
+            slot.firstVertex = vertex;
+            slot.firstRange = range - slot.rangeCount;
+            vertex += slot.vertexCount;
+        }
+        ((Buffer) compacted).clear();
+        this.vertices = compacted;
+        this.vertexCount = vertex;
+        this.ranges = range;
+        this.wastedVertices = 0;
+        this.reallocated = true;
+        markClean();
+    }
+
+    private void writeVertices(long[] points, int firstVertex) {
+        int offset = firstVertex * VERTEX_BYTES;
+        for (long pos : points) {
+            this.vertices.putFloat(offset, PackedPos.x(pos) - this.originX);
+            this.vertices.putFloat(offset + 4, PackedPos.y(pos) - this.originY);
+            this.vertices.putFloat(offset + 8, PackedPos.z(pos) - this.originZ);
+            offset += VERTEX_BYTES;
+        }
+    }
+
+    private void addRange(LodSegment segment, int piece) {
+        if (this.ranges * 6 == this.rangeBounds.length) {
+            final int size = this.ranges * 2;
+            this.rangeFirst = Arrays.copyOf(this.rangeFirst, size * LEVELS);
+            this.rangeCount = Arrays.copyOf(this.rangeCount, size * LEVELS);
+            this.rangeBounds = Arrays.copyOf(this.rangeBounds, size * 6);
+        }
+        // simplified levels only keep points of the full path so its bounds cover all of them
+        final long[] full = segment.full();
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+        for (int i = segment.pieceStarts[0][piece], end = segment.pieceEnd(0, piece); i <= end; i++) {
+            final int x = PackedPos.x(full[i]);
+            final int y = PackedPos.y(full[i]);
+            final int z = PackedPos.z(full[i]);
+            minX = Math.min(minX, x); minY = Math.min(minY, y); minZ = Math.min(minZ, z);
+            maxX = Math.max(maxX, x); maxY = Math.max(maxY, y); maxZ = Math.max(maxZ, z);
+        }
+        final int r = this.ranges++;
+        for (int level = 0; level < LEVELS; level++) {
+            final int start = segment.pieceStarts[level][piece];
+            this.rangeFirst[r * LEVELS + level] = this.levelBase[level] + start;
+            this.rangeCount[r * LEVELS + level] = segment.pieceEnd(level, piece) - start + 1;
+        }
+        final int b = r * 6;
+        this.rangeBounds[b] = minX;
+        this.rangeBounds[b + 1] = minY;
+        this.rangeBounds[b + 2] = minZ;
+        this.rangeBounds[b + 3] = maxX;
+        this.rangeBounds[b + 4] = maxY;
+        this.rangeBounds[b + 5] = maxZ;
+    }
+
+    private void ensureVertexCapacity(int vertices) {
+        final int bytes = vertices * VERTEX_BYTES;
+        if (bytes <= this.vertices.capacity()) return;
+        final ByteBuffer grown = allocate(Math.max(bytes, this.vertices.capacity() * 2));
+        final ByteBuffer old = this.vertices.duplicate();
+        ((Buffer) old).position(0).limit(this.vertexCount * VERTEX_BYTES);
+        grown.put(old);
+        ((Buffer) grown).clear();
+        this.vertices = grown;
+        this.reallocated = true;
+    }
+
+    private void markDirty(int from, int to) {
+        this.dirtyFrom = Math.min(this.dirtyFrom, from);
+        this.dirtyTo = Math.max(this.dirtyTo, to);
+    }
+
+    // Removes every segment but keeps the memory around for the next path
+    public void clear() {
+        this.vertexCount = 0;
+        this.ranges = 0;
+        this.slots.clear();
+        this.wastedVertices = 0;
+        this.hasOrigin = false;
+        this.dirtyFrom = Integer.MAX_VALUE;
+        this.dirtyTo = 0;
+    }
+
+    public boolean isEmpty() {
+        return this.vertexCount == this.wastedVertices;
+    }
+
+    public int getVertexCount() {
+        return this.vertexCount;
+    }
+
+    public int getRangeCount() {
+        return this.ranges;
+    }
+
+    public int getCapacityBytes() {
+        return this.vertices.capacity();
+    }
+
+    public int getOriginX() {
+        return this.originX;
+    }
+
+    public int getOriginY() {
+        return this.originY;
+    }
+
+    public int getOriginZ() {
+        return this.originZ;
+    }
+
+    // True once after the backing storage grew, the whole buffer has to be uploaded again
+    public boolean consumeReallocated() {
+        final boolean result = this.reallocated;
+        this.reallocated = false;
+        return result;
+    }
+
+    public boolean isDirty() {
+        return this.dirtyFrom < this.dirtyTo;
+    }
+
+    public int getDirtyFromVertex() {
+        return this.dirtyFrom;
+    }
+
+    public int getDirtyToVertex() {
+        return this.dirtyTo;
+    }
+
+    public void markClean() {
+        this.dirtyFrom = Integer.MAX_VALUE;
+        this.dirtyTo = 0;
+    }
+
+    // View of the vertex data between the two vertex indices
+    public ByteBuffer slice(int fromVertex, int toVertex) {
+        final ByteBuffer view = this.vertices.duplicate().order(ByteOrder.nativeOrder());
+        ((Buffer) view).position(fromVertex * VERTEX_BYTES).limit(toVertex * VERTEX_BYTES);
+        return view;
+    }
+
+    // Writes the first vertex and vertex count of every visible range at its selected level, returns how many ranges were written
+    public int selectVisible(LevelSelector selector, IntBuffer firsts, IntBuffer counts) {
+        ((Buffer) firsts).clear();
+        ((Buffer) counts).clear();
+        int visible = 0;
+        for (int r = 0; r < this.ranges; r++) {
+            // removed
+            if (this.rangeCount[r * LEVELS] == 0) continue;
+            final int b = r * 6;
+            final int level = selector.select(this.rangeBounds[b], this.rangeBounds[b + 1], this.rangeBounds[b + 2], this.rangeBounds[b + 3], this.rangeBounds[b + 4], this.rangeBounds[b + 5]);
+            if (level >= 0) {
+                firsts.put(this.rangeFirst[r * LEVELS + level]);
+                counts.put(this.rangeCount[r * LEVELS + level]);
+                visible++;
+            }
+        }
+        ((Buffer) firsts).flip();
+        ((Buffer) counts).flip();
+        return visible;
+    }
+}
@@ -0,0 +1,342 @@
+package com.babbaj.pathfinder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Finished search results stored on disk so searches between the same points don't have to run again. Records are
+ * appended to a memory mapped file and found through an index that is rebuilt by scanning the file when it is opened.
+ * A record that is cut off or fails its checksum ends the scan and is overwritten by the next write. Records are checked
+ * again when they are read and dropped if they are damaged. When the file grows past its size limit the most recently
+ * used records are copied into a new file and the old one is deleted.
+ */
+public class PathCache implements Closeable {
+    private static final int FILE_MAGIC = 0x4e504643; // NPFC
+    private static final int FILE_VERSION = 1;
+    private static final int FILE_HEADER_BYTES = 8;
+    private static final int RECORD_MAGIC = 0x52454331; // REC1
+    // magic, seed, start, end, flags, payload length
+    private static final int RECORD_HEADER_BYTES = 4 + 8 + 8 + 8 + 1 + 4;
+    private static final int CRC_BYTES = 4;
+    private static final String FILE_PREFIX = "cache-";
+    private static final String FILE_SUFFIX = ".bin";
+    // a mapped buffer is indexed with ints
+    public static final long MAX_BYTES = Integer.MAX_VALUE;
+
+    private final Path directory;
+    private final long maxBytes;
+    private final Map<Key, Entry> index = new HashMap<>();
+
+    private int generation;
+    private FileChannel channel;
+    // may end before fileSize, it is only mapped again when a record past its end is read
+    private MappedByteBuffer mapped;
+    private long fileSize;
+    private long useCounter;
+
+    private long hits;
+    private long misses;
+
+    public static final class Key {
+        public final long seed;
+        public final long start;
+        public final long end;
+        public final boolean raytrace;
+
+        public Key(long seed, long start, long end, boolean raytrace) {
+            this.seed = seed;
+            this.start = start;
+            this.end = end;
+            this.raytrace = raytrace;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            final Key key = (Key) o;
+            return this.seed == key.seed && this.start == key.start && this.end == key.end && this.raytrace == key.raytrace;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.seed, this.start, this.end, this.raytrace);
+        }
+    }
+
+    private static final class Entry {
+        final long offset;
+        final int length;
+        long lastUsed;
+
+        Entry(long offset, int length, long lastUsed) {
+            this.offset = offset;
+            this.length = length;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    private PathCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    public static PathCache open(Path directory, long maxBytes) throws IOException {
+        if (maxBytes > MAX_BYTES) throw new IllegalArgumentException("The path cache can't be larger than " + (MAX_BYTES >> 20) + " MiB");
+        final PathCache cache = new PathCache(directory, maxBytes);
+        Files.createDirectories(directory);
+        final List<Integer> generations = cache.listGenerations();
+        cache.generation = generations.isEmpty() ? 0 : generations.get(generations.size() - 1);
+        cache.openFile(cache.generation);
+        // files from older generations couldn't be deleted last time
+        for (int gen : generations) {
+            if (gen != cache.generation) Files.deleteIfExists(cache.fileFor(gen));
+        }
+        return cache;
+    }
+
+    private List<Integer> listGenerations() throws IOException {
+        final List<Integer> generations = new ArrayList<>();
+        try (Stream<Path> files = Files.list(this.directory)) {
+            files.map(p -> p.getFileName().toString())
+                .filter(name -> name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX))
+                .forEach(name -> {
+                    try {
+                        generations.add(Integer.parseInt(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length())));
+                    } catch (NumberFormatException ignored) {}
+                });
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+    private Path fileFor(int generation) {
+        return this.directory.resolve(FILE_PREFIX + generation + FILE_SUFFIX);
+    }
+
+    private void openFile(int generation) throws IOException {
+        this.channel = FileChannel.open(fileFor(generation), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.index.clear();
+        if (this.channel.size() < FILE_HEADER_BYTES || !hasValidHeader()) {
+            final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+            header.putInt(FILE_MAGIC).putInt(FILE_VERSION);
+            ((Buffer) header).flip();
+            this.channel.write(header, 0);
+            this.fileSize = FILE_HEADER_BYTES;
+        } else {
+            // records past the size limit are dropped, the file may be from a larger limit
+            this.fileSize = Math.min(this.channel.size(), this.maxBytes);
+            scan();
+        }
+        remap();
+    }
+
+    private boolean hasValidHeader() throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+        this.channel.read(header, 0);
+        ((Buffer) header).flip();
+        return header.getInt() == FILE_MAGIC && header.getInt() == FILE_VERSION;
+    }
+
+    private void remap() throws IOException {
+        this.mapped = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, this.fileSize);
+    }
+
+    // Rebuilds the index from the file and stops at the first record that is damaged
+    private void scan() throws IOException {
+        remap();
+        final ByteBuffer buf = this.mapped.duplicate();
+        long offset = FILE_HEADER_BYTES;
+        while (offset + RECORD_HEADER_BYTES + CRC_BYTES <= this.fileSize) {
+            ((Buffer) buf).position((int) offset);
+            if (buf.getInt() != RECORD_MAGIC) break;
+            final long seed = buf.getLong();
+            final long start = buf.getLong();
+            final long end = buf.getLong();
+            final boolean raytrace = buf.get() != 0;
+            final int payload = buf.getInt();
+            final long length = RECORD_HEADER_BYTES + (long) payload + CRC_BYTES;
+            if (payload < 0 || offset + length > this.fileSize) break;
+            if (checksum(buf, (int) offset + 4, RECORD_HEADER_BYTES - 4 + payload) != buf.getInt((int) (offset + length - CRC_BYTES))) break;
+            this.index.put(new Key(seed, start, end, raytrace), new Entry(offset, (int) length, ++this.useCounter));
+            offset += length;
+        }
+        // anything after the last good record is garbage and gets overwritten
+        this.fileSize = offset;
+    }
+
+    private static int checksum(ByteBuffer buf, int from, int length) {
+        final ByteBuffer view = buf.duplicate();
+        ((Buffer) view).position(from).limit(from + length);
+        final CRC32 crc = new CRC32();
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+
+    public synchronized List<long[]> get(Key key) {
+        final Entry entry = this.index.get(key);
+        if (entry == null) {
+            this.misses++;
+            return null;
+        }
+        try {
+            final List<long[]> segments = readSegments(entry);
+            this.hits++;
+            entry.lastUsed = ++this.useCounter;
+            return segments;
+        } catch (IOException ex) {
+            // it is searched again instead and the space is reclaimed by the next compaction
+            ex.printStackTrace();
+            this.index.remove(key);
+            this.misses++;
+            return null;
+        }
+    }
+
+    // Finds a stored path to the same destination whose start is within radius blocks of this start
+    public synchronized Key findNearStart(Key key, int radius) {
+        Key best = null;
+        long bestDistSq = (long) radius * radius;
+        for (Key candidate : this.index.keySet()) {
+            if (candidate.seed != key.seed || candidate.end != key.end || candidate.raytrace != key.raytrace) continue;
+            final long dx = PackedPos.x(candidate.start) - PackedPos.x(key.start);
+            final long dy = PackedPos.y(candidate.start) - PackedPos.y(key.start);
+            final long dz = PackedPos.z(candidate.start) - PackedPos.z(key.start);
+            final long distSq = dx * dx + dy * dy + dz * dz;
+            if (distSq <= bestDistSq) {
+                best = candidate;
+                bestDistSq = distSq;
+            }
+        }
+        return best;
+    }
+
+    // The file can change under the mapping so nothing in it is trusted
+    private List<long[]> readSegments(Entry entry) throws IOException {
+        if (entry.offset + entry.length > this.mapped.capacity()) remap();
+        final int offset = (int) entry.offset;
+        final int end = offset + entry.length - CRC_BYTES;
+        if (checksum(this.mapped, offset + 4, entry.length - 4 - CRC_BYTES) != this.mapped.getInt(end)) {
+            throw new IOException("checksum mismatch at " + offset);
+        }
+        final ByteBuffer buf = this.mapped.duplicate();
+        ((Buffer) buf).position(offset + RECORD_HEADER_BYTES).limit(end);
+        final int count = buf.getInt();
+        if (count < 0 || count > buf.remaining() / 4) throw new IOException("bad segment count " + count + " at " + offset);
+        final List<long[]> segments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final int points = buf.remaining() >= 4 ? buf.getInt() : -1;
+            if (points < 0 || points > buf.remaining() / 8) throw new IOException("bad segment length " + points + " at " + offset);
+            final long[] packed = new long[points];
+            buf.asLongBuffer().get(packed);
+            ((Buffer) buf).position(buf.position() + packed.length * 8);
+            segments.add(packed);
+        }
+        if (buf.hasRemaining()) throw new IOException("record at " + offset + " is longer than its segments");
+        return segments;
+    }
+
+    public synchronized void put(Key key, List<long[]> segments) throws IOException {
+        if (this.index.containsKey(key)) return;
+        int payload = 4;
+        for (long[] segment : segments) payload += 4 + segment.length * 8;
+        final int length = RECORD_HEADER_BYTES + payload + CRC_BYTES;
+        if (length > this.maxBytes / 2) return; // would never survive compaction
+
+        final ByteBuffer buf = ByteBuffer.allocate(length);
+        buf.putInt(RECORD_MAGIC)
+            .putLong(key.seed)
+            .putLong(key.start)
+            .putLong(key.end)
+            .put((byte) (key.raytrace ? 1 : 0))
+            .putInt(payload)
+            .putInt(segments.size());
+        for (long[] segment : segments) {
+            buf.putInt(segment.length);
+            for (long pos : segment) buf.putLong(pos);
+        }
+        buf.putInt(checksum(buf, 4, length - 4 - CRC_BYTES));
+        ((Buffer) buf).flip();
+
+        if (this.fileSize + length > this.maxBytes) {
+            compact(this.maxBytes / 2 - length);
+        }
+        final long offset = this.fileSize;
+        while (buf.hasRemaining()) {
+            this.channel.write(buf, offset + buf.position());
+        }
+        this.fileSize += length;
+        this.index.put(key, new Entry(offset, length, ++this.useCounter));
+    }
+
+    // Copies the most recently used records that fit in budget bytes into a new file
+    private void compact(long budget) throws IOException {
+        final List<Map.Entry<Key, Entry>> entries = new ArrayList<>(this.index.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue().lastUsed, a.getValue().lastUsed));
+
+        final int next = this.generation + 1;
+        final Path nextFile = fileFor(next);
+        final Map<Key, Entry> kept = new HashMap<>();
+        try (FileChannel out = FileChannel.open(nextFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+            header.putInt(FILE_MAGIC).putInt(FILE_VERSION);
+            ((Buffer) header).flip();
+            out.write(header);
+            long offset = FILE_HEADER_BYTES;
+            for (Map.Entry<Key, Entry> e : entries) {
+                final Entry entry = e.getValue();
+                if (offset - FILE_HEADER_BYTES + entry.length > budget) break;
+                if (entry.offset + entry.length > this.mapped.capacity()) remap();
+                final ByteBuffer record = this.mapped.duplicate();
+                ((Buffer) record).position((int) entry.offset).limit((int) entry.offset + entry.length);
+                while (record.hasRemaining()) out.write(record);
+                kept.put(e.getKey(), new Entry(offset, entry.length, entry.lastUsed));
+                offset += entry.length;
+            }
+        }
+        final Path oldFile = fileFor(this.generation);
+        this.channel.close();
+        this.mapped = null;
+        this.generation = next;
+        openFile(next);
+        // keep the recency order from before the compaction
+        for (Map.Entry<Key, Entry> e : kept.entrySet()) {
+            final Entry entry = this.index.get(e.getKey());
+            if (entry != null) entry.lastUsed = e.getValue().lastUsed;
+        }
+        try {
+            Files.deleteIfExists(oldFile);
+        } catch (IOException ex) {
+            // still mapped on windows, it gets deleted the next time the cache is opened
+        }
+    }
+
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    public synchronized int size() {
+        return this.index.size();
+    }
+
+    public synchronized long sizeBytes() {
+        return this.fileSize;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        this.channel.close();
+        this.mapped = null;
+    }
+}
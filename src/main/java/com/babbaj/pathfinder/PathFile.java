@@ -0,0 +1,140 @@
+package com.babbaj.pathfinder;
+
+import java.io.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Compact file format for sharing paths. After the header (magic, version, seed, options) every segment is its point
+ * count followed by the points as zig-zag varint deltas from the point before, so a step of a few blocks takes about 3
+ * bytes instead of a packed long's 8. A point count of 0 ends the segments and is followed by a CRC32 of everything
+ * before it. The checksum is at the end so paths can be written while they are still being produced.
+ */
+public final class PathFile {
+    public static final String EXTENSION = ".npp";
+    private static final int MAGIC = 0x4e505046; // NPPF
+    private static final int VERSION = 1;
+    private static final int FLAG_RAYTRACE = 1;
+
+    private PathFile() {}
+
+    static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = in.read();
+            if (b == -1) throw new EOFException("Path file is cut off");
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint in path file");
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public static final class Writer implements Closeable {
+        private final CheckedOutputStream checked;
+        private final DataOutputStream out;
+        private int lastX, lastY, lastZ;
+        private long points;
+
+        public Writer(OutputStream stream, long seed, boolean raytrace) throws IOException {
+            this.checked = new CheckedOutputStream(new BufferedOutputStream(stream), new CRC32());
+            this.out = new DataOutputStream(this.checked);
+            this.out.writeInt(MAGIC);
+            this.out.writeByte(VERSION);
+            this.out.writeLong(seed);
+            this.out.writeByte(raytrace ? FLAG_RAYTRACE : 0);
+        }
+
+        public void writeSegment(long[] packed) throws IOException {
+            if (packed.length == 0) return;
+            writeVarLong(this.out, packed.length);
+            for (long pos : packed) {
+                final int x = PackedPos.x(pos), y = PackedPos.y(pos), z = PackedPos.z(pos);
+                writeVarLong(this.out, zigZag(x - this.lastX));
+                writeVarLong(this.out, zigZag(y - this.lastY));
+                writeVarLong(this.out, zigZag(z - this.lastZ));
+                this.lastX = x;
+                this.lastY = y;
+                this.lastZ = z;
+            }
+            this.points += packed.length;
+        }
+
+        public long getPointCount() {
+            return this.points;
+        }
+
+        // Bytes written so far
+        public long size() {
+            return this.out.size();
+        }
+
+        @Override
+        public void close() throws IOException {
+            writeVarLong(this.out, 0);
+            this.out.writeInt((int) this.checked.getChecksum().getValue());
+            this.out.close();
+        }
+    }
+
+    public static final class Reader implements Closeable {
+        private final CheckedInputStream checked;
+        private final DataInputStream in;
+        public final long seed;
+        public final boolean raytrace;
+        private int lastX, lastY, lastZ;
+        private boolean done;
+
+        public Reader(InputStream stream) throws IOException {
+            this.checked = new CheckedInputStream(new BufferedInputStream(stream), new CRC32());
+            this.in = new DataInputStream(this.checked);
+            if (this.in.readInt() != MAGIC) throw new IOException("Not a path file");
+            final int version = this.in.readUnsignedByte();
+            if (version != VERSION) throw new IOException("Unsupported path file version " + version);
+            this.seed = this.in.readLong();
+            this.raytrace = (this.in.readUnsignedByte() & FLAG_RAYTRACE) != 0;
+        }
+
+        // Returns null after the last segment once the checksum matched
+        public long[] nextSegment() throws IOException {
+            if (this.done) return null;
+            final long count = readVarLong(this.in);
+            if (count == 0) {
+                final int expected = (int) this.checked.getChecksum().getValue();
+                if (this.in.readInt() != expected) throw new IOException("Path file checksum does not match");
+                this.done = true;
+                return null;
+            }
+            if (count > Integer.MAX_VALUE) throw new IOException("Segment too long in path file");
+            final long[] packed = new long[(int) count];
+            for (int i = 0; i < packed.length; i++) {
+                this.lastX += (int) unZigZag(readVarLong(this.in));
+                this.lastY += (int) unZigZag(readVarLong(this.in));
+                this.lastZ += (int) unZigZag(readVarLong(this.in));
+                packed[i] = PackedPos.pack(this.lastX, this.lastY, this.lastZ);
+            }
+            return packed;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.in.close();
+        }
+    }
+}
@@ -1,20 +1,37 @@
 package com.babbaj.pathfinder;
 
-import net.minecraft.util.math.BlockPos;
-
-import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
 
 public class PathFinder {
-    public final ConcurrentLinkedQueue<List<BlockPos>> resultQueue;
-    public final CompletableFuture<Boolean> future;
+    public final SegmentQueue<LodSegment> resultQueue;
+    // completes with how the search ended, segments from FOUND and TIMED_OUT searches are kept
+    public final CompletableFuture<PathSearch.Status> future;
     public final AtomicBoolean cancelled;
+    // a replan only patches the current path so it must not be thrown away if the replan fails
+    public final boolean replan;
+    // where in the active path the next segment goes, only used on the client thread
+    public int insertIndex;
+    public final long startNanos = System.nanoTime();
+    // if the first leg started on a warm context, to tell warm and cold time to first segment apart. Only known once the
+    // first segment has arrived
+    public final BooleanSupplier warmStart;
+    // set once the first segment has been shown, only used on the client thread
+    public boolean receivedSegment;
+    // runs on the client thread right before the first segment is added to the path, null if there is nothing to do
+    public Runnable beforeFirstSegment;
+
+    public PathFinder(SegmentQueue<LodSegment> resultQueue, CompletableFuture<PathSearch.Status> future, AtomicBoolean cancelled) {
+        this(resultQueue, future, cancelled, false, 0, () -> false);
+    }
 
-    public PathFinder(ConcurrentLinkedQueue<List<BlockPos>> resultQueue, CompletableFuture<Boolean> future, AtomicBoolean cancelled) {
+    public PathFinder(SegmentQueue<LodSegment> resultQueue, CompletableFuture<PathSearch.Status> future, AtomicBoolean cancelled, boolean replan, int insertIndex, BooleanSupplier warmStart) {
         this.resultQueue = resultQueue;
         this.future = future;
         this.cancelled = cancelled;
+        this.replan = replan;
+        this.insertIndex = insertIndex;
+        this.warmStart = warmStart;
     }
 }
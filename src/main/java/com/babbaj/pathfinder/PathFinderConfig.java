@@ -0,0 +1,145 @@
+package com.babbaj.pathfinder;
+
+import net.minecraftforge.common.config.Config;
+
+@Config(modid = PathFinderMod.MODID)
+public class PathFinderConfig {
+
+    @Config.Comment("Estimated native memory (in MiB) of all pathfinder contexts, including the ones a search is using, above which the least recently used idle contexts are freed")
+    @Config.RangeInt(min = 0)
+    public static int contextPoolMaxMemoryMiB = 512;
+
+    @Config.Comment("Seconds an idle pathfinder context is kept warm before it is freed")
+    @Config.RangeInt(min = 0)
+    public static int contextPoolMaxIdleSeconds = 600;
+
+    @Config.Comment("Number of pathfinding worker threads, 0 uses half of the available processors")
+    @Config.RangeInt(min = 0, max = 64)
+    public static int schedulerWorkers = 0;
+
+    @Config.Comment("Maximum number of pathfinding requests that can wait for a worker before new ones are rejected")
+    @Config.RangeInt(min = 1)
+    public static int schedulerQueueCapacity = 64;
+
+    @Config.Comment("Number of finished path segments a search can hand to the renderer before it waits for them to be consumed")
+    @Config.RangeInt(min = 1)
+    public static int segmentQueueCapacity = 32;
+
+    @Config.Comment("Time in nanoseconds the client thread may spend uploading finished segments each tick")
+    @Config.RangeInt(min = 0)
+    public static int ingestBudgetNanos = 2_000_000;
+
+    @Config.Comment("Consecutive segments shorter than this many blocks are merged before they are uploaded")
+    @Config.RangeInt(min = 1)
+    public static int ingestMergeVertices = 4096;
+
+    @Config.Comment("Parts of the path further away than this many blocks are not drawn, 0 uses the game's render distance and -1 draws everything")
+    @Config.RangeInt(min = -1)
+    public static int pathRenderDistanceBlocks = 0;
+
+    @Config.Comment("Distance in blocks per block of allowed error before a simplified version of the path is drawn, 0 always draws the full path")
+    @Config.RangeDouble(min = 0)
+    public static double lodDistancePerBlockError = 128;
+
+    @Config.Comment("Length in blocks of the legs that --autosplit splits a route into")
+    @Config.RangeInt(min = 1)
+    public static int autoSplitLegBlocks = 5000;
+
+    @Config.Comment("Size limit in MiB of the on disk cache of finished paths, 0 disables the cache")
+    @Config.RangeInt(min = 0, max = 1024)
+    public static int pathCacheMaxMiB = 64;
+
+    @Config.Comment("A cached path is reused for a start point this many blocks away from where it was searched from")
+    @Config.RangeInt(min = 0)
+    public static int pathCacheNearStartBlocks = 32;
+
+    @Config.Comment("How many blocks ahead of the closest point on the path ;replan rejoins it")
+    @Config.RangeInt(min = 0)
+    public static int replanRejoinAheadBlocks = 32;
+
+    @Config.Comment("Size of the first segment of a search")
+    @Config.RangeInt(min = 1)
+    public static int segmentSizeInitial = 1000;
+
+    @Config.Comment("Smallest segment size the adaptive sizing will use")
+    @Config.RangeInt(min = 1)
+    public static int segmentSizeMin = 500;
+
+    @Config.Comment("Largest segment size the adaptive sizing will use")
+    @Config.RangeInt(min = 1)
+    public static int segmentSizeMax = 20000;
+
+    @Config.Comment("Segment sizes are adjusted so each segment takes about this many milliseconds, this is also how long a cancel can take")
+    @Config.RangeInt(min = 1)
+    public static int segmentTargetMillis = 250;
+
+    @Config.Comment("Seconds a search may take before it stops and keeps the path found so far, 0 never stops. --timeout overrides this")
+    @Config.RangeDouble(min = 0)
+    public static double searchTimeoutSeconds = 300;
+
+    @Config.Comment("Number of sessions that may be searching at the same time, starting a search in another session is refused until one finishes")
+    @Config.RangeInt(min = 1)
+    public static int maxActiveSessions = 4;
+
+    @Config.Comment("Create the context and generate terrain ahead of the player when entering the nether on a server with a known seed")
+    public static boolean warmupOnNetherEntry = true;
+
+    @Config.Comment("How far in blocks the warm-up searches ahead of the player in each direction, 0 only creates the context")
+    @Config.RangeInt(min = 0)
+    public static int prefetchDistanceBlocks = 1500;
+
+    @Config.Comment("Angle in degrees between the player's heading and the two other directions the warm-up searches")
+    @Config.RangeDouble(min = 0, max = 90)
+    public static double prefetchConeDegrees = 30;
+
+    @Config.Comment("Segment size of the warm-up searches, smaller segments let real searches take over sooner")
+    @Config.RangeInt(min = 1)
+    public static int prefetchSegmentSize = 1000;
+
+    @Config.Comment("Seconds between checks of a finished path against the loaded chunks for blocks the seed doesn't know about, 0 disables the checks")
+    @Config.RangeInt(min = 0)
+    public static int validateIntervalSeconds = 10;
+
+    @Config.Comment("Number of chunk sections along the path that are copied for checking each tick")
+    @Config.RangeInt(min = 1)
+    public static int validateSectionsPerTick = 8;
+
+    @Config.Comment("How many blocks before and after a blocked stretch of the path the way around it leaves and rejoins the path")
+    @Config.RangeInt(min = 1)
+    public static int repairMarginBlocks = 8;
+
+    @Config.Comment("Largest number of blocks that are searched to get around a blocked stretch of the path")
+    @Config.RangeInt(min = 1)
+    public static int repairMaxVolume = 262144;
+
+    @Config.Comment("Number of targets ;nearest searches at the same time")
+    @Config.RangeInt(min = 1)
+    public static int nearestMaxParallel = 4;
+
+    @Config.Comment("Size in blocks of the grid cells the path is indexed in to find the closest point on it")
+    @Config.RangeInt(min = 1)
+    public static int pathIndexCellBlocks = 32;
+
+    @Config.Comment("Distance in blocks from the path at which the player is told that they left it, 0 disables the message")
+    @Config.RangeInt(min = 0)
+    public static int offRouteBlocks = 32;
+
+    @Config.Comment("Number of closest hubs each hub of the route network gets a corridor to")
+    @Config.RangeInt(min = 1)
+    public static int networkCorridorNeighbors = 4;
+
+    @Config.Comment("How much longer than the straight line a route through the network may be before it is searched directly instead, 0.25 is 25%")
+    @Config.RangeDouble(min = 0)
+    public static double networkMaxDetour = 0.25;
+
+    @Config.Comment("Segment size of the corridor searches, smaller segments let real searches take over sooner")
+    @Config.RangeInt(min = 1)
+    public static int networkSegmentSize = 5000;
+
+    @Config.Comment("Append every path request and the time each of its segments took to pathfinder_trace.bin so it can be replayed later")
+    public static boolean traceRequests = false;
+
+    @Config.Comment("Seconds between writes of the pathfinder metrics to pathfinder_metrics.csv and pathfinder_metrics.json, 0 disables the export")
+    @Config.RangeInt(min = 0)
+    public static int metricsExportSeconds = 0;
+}
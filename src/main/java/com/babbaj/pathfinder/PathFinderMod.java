@@ -1,22 +1,13 @@
 package com.babbaj.pathfinder;
 
-import com.google.gson.*;
-import com.google.gson.reflect.TypeToken;
-import com.google.gson.stream.JsonReader;
-import dev.babbaj.pathfinder.NetherPathfinder;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.fml.common.Mod;
 import net.minecraftforge.fml.common.event.FMLInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLPreInitializationEvent;
 import org.apache.logging.log4j.Logger;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.*;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Objects;
-import java.util.Optional;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 @Mod(modid = PathFinderMod.MODID, name = PathFinderMod.NAME, version = PathFinderMod.VERSION)
 public class PathFinderMod {
@@ -26,28 +17,16 @@ public class PathFinderMod {
 
     private static Logger logger;
     public static final Path SEEDS_PATH = Paths.get("pathfinder_seeds.json");
-
-    public static void writeSeedsToDisk(Map<String, Long> seeds) {
-        String json = new GsonBuilder().setPrettyPrinting().create().toJson(seeds);
-        try {
-            Files.write(SEEDS_PATH, json.getBytes());
-        } catch (IOException ex) {
-            ex.printStackTrace();
-        }
-    }
-
-    private static Optional<Map<String, Long>> readSeedsFromDisk() {
-        if (!Files.isReadable(SEEDS_PATH)) return Optional.empty();
-
-        try {
-            JsonReader reader = new JsonReader(Files.newBufferedReader(SEEDS_PATH));
-            return Optional.of(
-                new Gson().fromJson(reader, new TypeToken<Map<String, Long>>() {}.getType())
-            );
-        } catch (IOException | JsonParseException ex) {
-            ex.printStackTrace();
-            return Optional.empty();
-        }
+    public static final Path TARGETS_PATH = Paths.get("pathfinder_targets.json");
+    public static final Path CACHE_PATH = Paths.get("pathfinder_cache");
+    public static final Path PATHS_PATH = Paths.get("pathfinder_paths");
+    public static final Path NETWORK_PATH = Paths.get("pathfinder_network");
+    public static final Path METRICS_CSV_PATH = Paths.get("pathfinder_metrics.csv");
+    public static final Path METRICS_JSON_PATH = Paths.get("pathfinder_metrics.json");
+    public static final Path TRACE_PATH = Paths.get("pathfinder_trace.bin");
+
+    public static Logger getLogger() {
+        return logger;
     }
 
     @Mod.EventHandler
@@ -59,10 +38,11 @@ public class PathFinderMod {
     @Mod.EventHandler
     public void init(FMLInitializationEvent event)
     {
-        if (NetherPathfinder.isThisSystemSupported()) {
-            MinecraftForge.EVENT_BUS.register(new ExamplePathfinderControl(readSeedsFromDisk().orElse(new HashMap<>())));
-        } else {
-            logger.fatal("This system isn't supported lol");
-        }
+        // the native library and the seeds are loaded in the background, commands wait for them
+        final long t1 = System.nanoTime();
+        MinecraftForge.EVENT_BUS.register(new ExamplePathfinderControl());
+        final long nanos = System.nanoTime() - t1;
+        PathfinderMetrics.STARTUP_INIT.record(nanos);
+        logger.info(String.format("Init took %.1fms on the loading thread", nanos / 1e6));
     }
 }
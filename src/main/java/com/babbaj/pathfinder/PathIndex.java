@@ -0,0 +1,326 @@
+package com.babbaj.pathfinder;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Uniform grid over the edges of a path so the closest point on it can be found without looking at every point. Edges
+ * are added to every column of cells they cross when their part is added, the height isn't used because the nether is
+ * only 128 blocks high. Removed parts leave their entries behind until they outnumber the live ones and the grid is
+ * rebuilt. Every part knows how far along the route it starts so a position can be turned into the distance left.
+ */
+public class PathIndex {
+    private final int cellSize;
+    private final Map<Long, Cell> cells = new HashMap<>();
+    private final Map<Integer, Part> parts = new HashMap<>();
+    private int nextId;
+    private long liveEntries;
+    private long deadEntries;
+    private double totalLength;
+    private int minCellX = Integer.MAX_VALUE, minCellZ = Integer.MAX_VALUE;
+    private int maxCellX = Integer.MIN_VALUE, maxCellZ = Integer.MIN_VALUE;
+
+    private static final class Part {
+        final long[] points;
+        // distance from the start of the part to every point
+        final double[] cumulative;
+        // distance from the start of the route to the start of the part
+        double start;
+        long entries;
+
+        Part(long[] points) {
+            this.points = points;
+            this.cumulative = new double[points.length];
+            for (int i = 1; i < points.length; i++) {
+                this.cumulative[i] = this.cumulative[i - 1] + ActivePath.distance(points[i - 1], points[i]);
+            }
+        }
+
+        double length() {
+            return this.cumulative[this.cumulative.length - 1];
+        }
+    }
+
+    // Entries are the part id in the high bits and the index of the edge's first point in the low bits
+    private static final class Cell {
+        long[] entries = new long[4];
+        int size;
+
+        void add(long entry) {
+            if (this.size == this.entries.length) {
+                this.entries = Arrays.copyOf(this.entries, this.size * 2);
+            }
+            this.entries[this.size++] = entry;
+        }
+    }
+
+    public static final class Projection {
+        public final int partId;
+        // the closest point is between this point and the next one
+        public final int point;
+        public final double t;
+        public final double distance;
+        // distance along the route from its start to the closest point
+        public final double along;
+
+        Projection(int partId, int point, double t, double distance, double along) {
+            this.partId = partId;
+            this.point = point;
+            this.t = t;
+            this.distance = distance;
+            this.along = along;
+        }
+
+        // The point of the path that is closest to the position
+        public int nearestPoint() {
+            return this.t > 0.5 ? this.point + 1 : this.point;
+        }
+    }
+
+    public PathIndex(int cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    public static PathIndex fromConfig() {
+        return new PathIndex(PathFinderConfig.pathIndexCellBlocks);
+    }
+
+    private static long cellKey(int cx, int cz) {
+        return ((long) cx << 32) | (cz & 0xFFFFFFFFL);
+    }
+
+    private void addEntry(int cx, int cz, long entry) {
+        this.cells.computeIfAbsent(cellKey(cx, cz), k -> new Cell()).add(entry);
+        this.minCellX = Math.min(this.minCellX, cx);
+        this.minCellZ = Math.min(this.minCellZ, cz);
+        this.maxCellX = Math.max(this.maxCellX, cx);
+        this.maxCellZ = Math.max(this.maxCellZ, cz);
+    }
+
+    // Adds the edge to every cell its line crosses, walking the grid one cell boundary at a time
+    private long addEdge(long a, long b, long entry) {
+        final double x0 = PackedPos.x(a) + 0.5, z0 = PackedPos.z(a) + 0.5;
+        final double x1 = PackedPos.x(b) + 0.5, z1 = PackedPos.z(b) + 0.5;
+        int cx = Math.floorDiv(PackedPos.x(a), this.cellSize);
+        int cz = Math.floorDiv(PackedPos.z(a), this.cellSize);
+        final int endX = Math.floorDiv(PackedPos.x(b), this.cellSize);
+        final int endZ = Math.floorDiv(PackedPos.z(b), this.cellSize);
+        final double dx = x1 - x0, dz = z1 - z0;
+        final int stepX = dx > 0 ? 1 : -1, stepZ = dz > 0 ? 1 : -1;
+        final double deltaX = dx == 0 ? Double.POSITIVE_INFINITY : this.cellSize / Math.abs(dx);
+        final double deltaZ = dz == 0 ? Double.POSITIVE_INFINITY : this.cellSize / Math.abs(dz);
+        double nextX = dx == 0 ? Double.POSITIVE_INFINITY : ((stepX > 0 ? (cx + 1) * (double) this.cellSize - x0 : x0 - cx * (double) this.cellSize) / Math.abs(dx));
+        double nextZ = dz == 0 ? Double.POSITIVE_INFINITY : ((stepZ > 0 ? (cz + 1) * (double) this.cellSize - z0 : z0 - cz * (double) this.cellSize) / Math.abs(dz));
+        long added = 1;
+        addEntry(cx, cz, entry);
+        // one step per cell boundary, an axis that already reached its end isn't stepped again because of rounding
+        final int steps = Math.abs(endX - cx) + Math.abs(endZ - cz);
+        for (int i = 0; i < steps; i++) {
+            if (cz == endZ || (cx != endX && nextX < nextZ)) {
+                cx += stepX;
+                nextX += deltaX;
+            } else {
+                cz += stepZ;
+                nextZ += deltaZ;
+            }
+            addEntry(cx, cz, entry);
+            added++;
+        }
+        return added;
+    }
+
+    private void addEntries(int id, Part part) {
+        final long base = (long) id << 32;
+        if (part.points.length == 1) {
+            part.entries = addEdge(part.points[0], part.points[0], base);
+        } else {
+            for (int i = 0; i + 1 < part.points.length; i++) {
+                part.entries += addEdge(part.points[i], part.points[i + 1], base | i);
+            }
+        }
+        this.liveEntries += part.entries;
+    }
+
+    // Returns the id of the part, its place in the route is set by setOrder
+    public int addPart(long[] points) {
+        final int id = this.nextId++;
+        final Part part = new Part(points);
+        this.parts.put(id, part);
+        addEntries(id, part);
+        return id;
+    }
+
+    public void removePart(int id) {
+        final Part part = this.parts.remove(id);
+        if (part == null) return;
+        this.liveEntries -= part.entries;
+        this.deadEntries += part.entries;
+        if (this.deadEntries > this.liveEntries) {
+            rebuild();
+        }
+    }
+
+    private void rebuild() {
+        this.cells.clear();
+        this.liveEntries = 0;
+        this.deadEntries = 0;
+        this.minCellX = this.minCellZ = Integer.MAX_VALUE;
+        this.maxCellX = this.maxCellZ = Integer.MIN_VALUE;
+        for (Map.Entry<Integer, Part> entry : this.parts.entrySet()) {
+            entry.getValue().entries = 0;
+            addEntries(entry.getKey(), entry.getValue());
+        }
+    }
+
+    // Ids of every part in route order
+    public void setOrder(List<Integer> ids) {
+        double start = 0;
+        for (int id : ids) {
+            final Part part = this.parts.get(id);
+            part.start = start;
+            start += part.length();
+        }
+        this.totalLength = start;
+    }
+
+    // Puts the part after every other part, cheaper than setOrder when the path grows at its end
+    public void placeLast(int id) {
+        final Part part = this.parts.get(id);
+        part.start = this.totalLength;
+        this.totalLength += part.length();
+    }
+
+    public void clear() {
+        this.parts.clear();
+        this.cells.clear();
+        this.liveEntries = 0;
+        this.deadEntries = 0;
+        this.totalLength = 0;
+        this.minCellX = this.minCellZ = Integer.MAX_VALUE;
+        this.maxCellX = this.maxCellZ = Integer.MIN_VALUE;
+    }
+
+    public double getTotalLength() {
+        return this.totalLength;
+    }
+
+    public int getCellCount() {
+        return this.cells.size();
+    }
+
+    // The closest point on the path that is at most maxDistance away, or null if there is none
+    public Projection nearest(double x, double y, double z, double maxDistance) {
+        if (this.parts.isEmpty()) return null;
+        final int cx = (int) Math.floor(x / this.cellSize);
+        final int cz = (int) Math.floor(z / this.cellSize);
+        // rings closer than this don't touch the cells of the path and rings further than this have nothing in them
+        final int minRing = Math.max(0, Math.max(Math.max(this.minCellX - cx, cx - this.maxCellX), Math.max(this.minCellZ - cz, cz - this.maxCellZ)));
+        final int maxRing = Math.max(Math.max(cx - this.minCellX, this.maxCellX - cx), Math.max(cz - this.minCellZ, this.maxCellZ - cz));
+        final double[] best = {maxDistance * maxDistance};
+        final Projection[] result = {null};
+        long looked = 0;
+        for (int ring = minRing; ring <= maxRing; ring++) {
+            // every cell in this ring is at least this far away horizontally
+            final double ringDistance = (ring - 1) * (double) this.cellSize;
+            if (ring > 0 && ringDistance * ringDistance >= best[0]) break;
+            // once the rings have cost more lookups than there are cells it is cheaper to look at every cell
+            looked += ringCells(cx, cz, ring);
+            if (looked > this.cells.size()) {
+                searchAll(x, y, z, best, result);
+                break;
+            }
+            searchRing(cx, cz, ring, x, y, z, best, result);
+        }
+        return result[0];
+    }
+
+    // Looks at every cell, the closest one first so the entries of most others can be skipped
+    private void searchAll(double x, double y, double z, double[] best, Projection[] result) {
+        Cell closest = null;
+        double closestSq = Double.POSITIVE_INFINITY;
+        for (Map.Entry<Long, Cell> entry : this.cells.entrySet()) {
+            final double distSq = cellDistanceSq(entry.getKey(), x, z);
+            if (distSq < closestSq) {
+                closestSq = distSq;
+                closest = entry.getValue();
+            }
+        }
+        if (closest != null) searchEntries(closest, x, y, z, best, result);
+        for (Map.Entry<Long, Cell> entry : this.cells.entrySet()) {
+            if (entry.getValue() != closest && cellDistanceSq(entry.getKey(), x, z) < best[0]) {
+                searchEntries(entry.getValue(), x, y, z, best, result);
+            }
+        }
+    }
+
+    // Horizontal distance to the cell, less a block because the edges in a cell can stick out of it a little
+    private double cellDistanceSq(long key, double x, double z) {
+        final double minX = (int) (key >> 32) * (double) this.cellSize - 1, minZ = (int) key * (double) this.cellSize - 1;
+        final double dx = Math.max(0, Math.max(minX - x, x - (minX + this.cellSize + 2)));
+        final double dz = Math.max(0, Math.max(minZ - z, z - (minZ + this.cellSize + 2)));
+        return dx * dx + dz * dz;
+    }
+
+    // Number of cells of the ring that are inside the bounds of the path
+    private int ringCells(int cx, int cz, int ring) {
+        if (ring == 0) return 1;
+        final int width = Math.max(0, Math.min(cx + ring, this.maxCellX) - Math.max(cx - ring, this.minCellX) + 1);
+        final int height = Math.max(0, Math.min(cz + ring - 1, this.maxCellZ) - Math.max(cz - ring + 1, this.minCellZ) + 1);
+        // rings start at the bounds so they never go past the far side of them
+        int count = 0;
+        if (cz - ring >= this.minCellZ) count += width;
+        if (cz + ring <= this.maxCellZ) count += width;
+        if (cx - ring >= this.minCellX) count += height;
+        if (cx + ring <= this.maxCellX) count += height;
+        return count;
+    }
+
+    // Searches the cells of the ring that are inside the bounds of the path
+    private void searchRing(int cx, int cz, int ring, double x, double y, double z, double[] best, Projection[] result) {
+        final int fromX = Math.max(cx - ring, this.minCellX), toX = Math.min(cx + ring, this.maxCellX);
+        final int fromZ = Math.max(cz - ring + 1, this.minCellZ), toZ = Math.min(cz + ring - 1, this.maxCellZ);
+        if (ring == 0) {
+            searchCell(cx, cz, x, y, z, best, result);
+            return;
+        }
+        for (int i = fromX; i <= toX; i++) {
+            if (cz - ring >= this.minCellZ) searchCell(i, cz - ring, x, y, z, best, result);
+            if (cz + ring <= this.maxCellZ) searchCell(i, cz + ring, x, y, z, best, result);
+        }
+        for (int i = fromZ; i <= toZ; i++) {
+            if (cx - ring >= this.minCellX) searchCell(cx - ring, i, x, y, z, best, result);
+            if (cx + ring <= this.maxCellX) searchCell(cx + ring, i, x, y, z, best, result);
+        }
+    }
+
+    private void searchCell(int cx, int cz, double x, double y, double z, double[] best, Projection[] result) {
+        final Cell cell = this.cells.get(cellKey(cx, cz));
+        if (cell != null) searchEntries(cell, x, y, z, best, result);
+    }
+
+    private void searchEntries(Cell cell, double x, double y, double z, double[] best, Projection[] result) {
+        for (int i = 0; i < cell.size; i++) {
+            final long entry = cell.entries[i];
+            final int id = (int) (entry >>> 32);
+            final Part part = this.parts.get(id);
+            if (part == null) continue;
+            final int point = (int) entry;
+            final long a = part.points[point];
+            final long b = point + 1 < part.points.length ? part.points[point + 1] : a;
+            final double ax = PackedPos.x(a), ay = PackedPos.y(a), az = PackedPos.z(a);
+            final double ex = PackedPos.x(b) - ax, ey = PackedPos.y(b) - ay, ez = PackedPos.z(b) - az;
+            final double lengthSq = ex * ex + ey * ey + ez * ez;
+            double t = lengthSq == 0 ? 0 : ((x - ax) * ex + (y - ay) * ey + (z - az) * ez) / lengthSq;
+            t = Math.max(0, Math.min(1, t));
+            final double px = ax + ex * t - x, py = ay + ey * t - y, pz = az + ez * t - z;
+            final double distSq = px * px + py * py + pz * pz;
+            if (distSq < best[0] || (result[0] == null && distSq <= best[0])) {
+                best[0] = distSq;
+                final double along = part.start + part.cumulative[point] + t * Math.sqrt(lengthSq);
+                result[0] = new Projection(id, point, t, Math.sqrt(distSq), along);
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.babbaj.pathfinder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Turns a coarse path (searched without raytracing so it shows up sooner) into the simplified one after it is shown.
+ * Each part of the {@link ActivePath} is searched again with raytracing between its two ends on a background worker, on
+ * the context the coarse search already generated the terrain in, and swapped in for the coarse part in one step on
+ * the client thread. Parts are refined in route order, so the stretch in front of the player is done first.
+ */
+public class PathRefiner {
+    private final PathfinderScheduler scheduler;
+    private final ContextPool pool;
+    private final long seed;
+    private final Consumer<String> messages;
+    // System.nanoTime() when the coarse search was started
+    private final long startNanos;
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+
+    // version of the path after our last change, anything else changing it stops the refinement
+    private int version = -1;
+    private int next;
+    private CompletableFuture<long[]> current;
+    private int refined;
+    private double saved;
+
+    public PathRefiner(PathfinderScheduler scheduler, ContextPool pool, long seed, long startNanos, Consumer<String> messages) {
+        this.scheduler = scheduler;
+        this.pool = pool;
+        this.seed = seed;
+        this.startNanos = startNanos;
+        this.messages = messages;
+    }
+
+    public void cancel() {
+        this.cancelled.set(true);
+    }
+
+    // Searches the part again with raytracing, null if that didn't work out
+    private long[] refine(long[] coarse) {
+        final List<long[]> segments = new ArrayList<>();
+        final PathSearch.Status status;
+        try (ContextPool.Lease lease = this.pool.acquire(this.seed)) {
+            status = PathSearch.run(lease, coarse[0], coarse[coarse.length - 1], true, new SegmentSizer(SegmentSizer.Settings.fromConfig()),
+                this.cancelled, packed -> segments.add(packed));
+        }
+        if (status != PathSearch.Status.FOUND) return null;
+        int count = 0;
+        for (long[] packed : segments) count += packed.length;
+        final long[] points = new long[count];
+        int size = 0;
+        for (long[] packed : segments) {
+            // a segment starts where the one before it ended
+            final int skip = size > 0 && points[size - 1] == packed[0] ? 1 : 0;
+            System.arraycopy(packed, skip, points, size, packed.length - skip);
+            size += packed.length - skip;
+        }
+        return size == count ? points : Arrays.copyOf(points, size);
+    }
+
+    // Called every tick on the client thread once the coarse path is complete, returns true when it is done
+    public boolean tick(ActivePath path) {
+        if (this.cancelled.get()) return true;
+        if (this.version == -1) {
+            this.version = path.getVersion();
+        } else if (path.getVersion() != this.version) {
+            // replanned, repaired or cut off, the parts don't line up with ours anymore
+            cancel();
+            this.messages.accept("Path changed, stopped refining it");
+            return true;
+        }
+        if (this.current != null) {
+            if (!this.current.isDone()) return false;
+            final long[] points = this.current.exceptionally(ex -> {
+                ex.printStackTrace();
+                return null;
+            }).join();
+            this.current = null;
+            final long[] coarse = path.partPoints(this.next);
+            // the simplified path can't be longer, if it is something went wrong and the coarse part is kept
+            if (points != null && ActivePath.length(points) <= ActivePath.length(coarse)) {
+                this.saved += ActivePath.length(coarse) - ActivePath.length(points);
+                this.refined++;
+                path.replacePart(this.next, LodSegment.build(points));
+                this.version = path.getVersion();
+            }
+            this.next++;
+        }
+        // parts that are a single line can't get any simpler
+        while (this.next < path.partCount() && path.partPoints(this.next).length < 3) {
+            this.next++;
+        }
+        if (this.next >= path.partCount()) {
+            final long nanos = System.nanoTime() - this.startNanos;
+            PathfinderMetrics.PROGRESSIVE_REFINED.record(nanos);
+            this.messages.accept(String.format("Refined path in %.2f seconds (%d of %d parts, %d blocks shorter)",
+                nanos / 1e9, this.refined, path.partCount(), Math.round(this.saved)));
+            return true;
+        }
+        final long[] coarse = path.partPoints(this.next);
+        this.current = this.scheduler.submit(PathfinderScheduler.Priority.BACKGROUND, () -> refine(coarse));
+        return false;
+    }
+}
@@ -2,54 +2,60 @@ package com.babbaj.pathfinder;
 
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.renderer.*;
+import net.minecraft.client.renderer.culling.ClippingHelperImpl;
 import net.minecraft.entity.Entity;
-import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Vec3d;
-import net.minecraftforge.client.event.RenderWorldLastEvent;
-import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
 import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL14;
 
-import java.nio.Buffer;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.IntBuffer;
-import java.util.List;
 
 import static org.lwjgl.opengl.GL15.*;
 
 
 public class PathRenderer {
-    private final int bufferId;
-    private final int numVertices;
-    private final Vec3d origin;
-
-    public PathRenderer(List<BlockPos> path) {
-        this.origin = Minecraft.getMinecraft().getRenderViewEntity().getPositionVector();
-
-        final int floatSize = 4;
-        final int vertexSize = floatSize * 3;
-        ByteBuffer buffer = GLAllocation.createDirectByteBuffer(path.size() * vertexSize);
-        for (BlockPos pos : path) {
-            buffer.putFloat((float) (pos.getX() - this.origin.x));
-            buffer.putFloat((float) (pos.getY() - this.origin.y));
-            buffer.putFloat((float) (pos.getZ() - this.origin.z));
-        }
-        ((Buffer)buffer).rewind(); // stupid no method error
-        this.bufferId = uploadBuffer(buffer);
-        this.numVertices = path.size();
+    private final PathBuffer buffer = new PathBuffer();
+    private int bufferId = -1;
+    private int uploadedCapacity;
+    private IntBuffer firsts = GLAllocation.createDirectIntBuffer(64);
+    private IntBuffer counts = GLAllocation.createDirectIntBuffer(64);
+    private float red = 0, green = 0, blue = 1.f;
+
+    public boolean isEmpty() {
+        return this.buffer.isEmpty();
     }
 
+    public void setColor(float red, float green, float blue) {
+        this.red = red;
+        this.green = green;
+        this.blue = blue;
+    }
 
-    private static int uploadBuffer(ByteBuffer buffer) {
-        IntBuffer ints = ByteBuffer.allocateDirect(4).order(ByteOrder.nativeOrder()).asIntBuffer();
+    public PathBuffer getBuffer() {
+        return this.buffer;
+    }
 
-        glGenBuffers(ints);
-        final int id = ints.get(0);
-        OpenGlHelper.glBindBuffer(GL_ARRAY_BUFFER, id);
-        OpenGlHelper.glBufferData(GL_ARRAY_BUFFER, buffer, GL_STATIC_DRAW);
-        OpenGlHelper.glBindBuffer(GL_ARRAY_BUFFER, 0);
+    private void upload() {
+        if (this.bufferId == -1) {
+            this.bufferId = glGenBuffers();
+        }
+        final boolean reallocated = this.buffer.consumeReallocated();
+        if (!reallocated && !this.buffer.isDirty()) return;
 
-        return id;
+        OpenGlHelper.glBindBuffer(GL_ARRAY_BUFFER, this.bufferId);
+        if (reallocated || this.buffer.getCapacityBytes() > this.uploadedCapacity) {
+            glBufferData(GL_ARRAY_BUFFER, this.buffer.getCapacityBytes(), GL_DYNAMIC_DRAW);
+            this.uploadedCapacity = this.buffer.getCapacityBytes();
+            glBufferSubData(GL_ARRAY_BUFFER, 0, this.buffer.slice(0, this.buffer.getVertexCount()));
+            PathfinderMetrics.UPLOAD_BYTES.record((long) this.buffer.getVertexCount() * PathBuffer.VERTEX_BYTES);
+        } else {
+            final int from = this.buffer.getDirtyFromVertex();
+            final int to = this.buffer.getDirtyToVertex();
+            glBufferSubData(GL_ARRAY_BUFFER, (long) from * PathBuffer.VERTEX_BYTES, this.buffer.slice(from, to));
+            PathfinderMetrics.UPLOAD_BYTES.record((long) (to - from) * PathBuffer.VERTEX_BYTES);
+        }
+        OpenGlHelper.glBindBuffer(GL_ARRAY_BUFFER, 0);
+        this.buffer.markClean();
     }
 
     public static Vec3d getInterpolatedAmount(Entity entity, double ticks) {
@@ -64,16 +70,17 @@ public class PathRenderer {
             .add(getInterpolatedAmount(entity, partialTicks));
     }
 
-    private static boolean isInNether() {
-        return Minecraft.getMinecraft().player.dimension == -1;
-    }
-
-
     private static Vec3d getTranslation(float partialTicks) {
         Entity renderEntity = Minecraft.getMinecraft().getRenderViewEntity();
         return interpolatedPos(renderEntity, partialTicks);
     }
 
+    private static double maxRenderDistance() {
+        if (PathFinderConfig.pathRenderDistanceBlocks < 0) return Double.POSITIVE_INFINITY;
+        if (PathFinderConfig.pathRenderDistanceBlocks > 0) return PathFinderConfig.pathRenderDistanceBlocks;
+        return Minecraft.getMinecraft().gameSettings.renderDistanceChunks * 16;
+    }
+
     public static void preRender() {
         GlStateManager.pushMatrix();
         GlStateManager.disableTexture2D();
@@ -94,25 +101,55 @@ public class PathRenderer {
         GlStateManager.popMatrix();
     }
 
-    public void drawLine(float partialTicks) {
-        GlStateManager.color(0, 0, 1.f);
-        Vec3d translation = getTranslation(partialTicks).subtract(this.origin);
-        GlStateManager.translate(-translation.x, -translation.y, -translation.z);
+    public void drawLines(float partialTicks) {
+        if (this.buffer.isEmpty()) return;
+        final long start = System.nanoTime();
+        try {
+            draw(partialTicks);
+        } finally {
+            PathfinderMetrics.RENDER_FRAME.record(System.nanoTime() - start);
+        }
+    }
+
+    private void draw(float partialTicks) {
+        upload();
+
+        final Vec3d camera = getTranslation(partialTicks);
+        // getInstance reads the current matrices so it has to be called every frame
+        final LodSelector selector = new LodSelector(camera.x, camera.y, camera.z, maxRenderDistance(), PathFinderConfig.lodDistancePerBlockError,
+            ClippingHelperImpl.getInstance().frustum);
+        if (this.firsts.capacity() < this.buffer.getRangeCount()) {
+            final int size = Math.max(this.buffer.getRangeCount(), this.firsts.capacity() * 2);
+            this.firsts = GLAllocation.createDirectIntBuffer(size);
+            this.counts = GLAllocation.createDirectIntBuffer(size);
+        }
+        final int visible = this.buffer.selectVisible(selector, this.firsts, this.counts);
+        if (visible == 0) return;
+
+        GlStateManager.color(this.red, this.green, this.blue);
+        // several renderers can draw in the same frame so the translation must not leak into the next one
+        GlStateManager.pushMatrix();
+        GlStateManager.translate(this.buffer.getOriginX() - camera.x, this.buffer.getOriginY() - camera.y, this.buffer.getOriginZ() - camera.z);
 
         OpenGlHelper.glBindBuffer(GL_ARRAY_BUFFER, this.bufferId);
         GlStateManager.glEnableClientState(GL11.GL_VERTEX_ARRAY);
 
         GlStateManager.glVertexPointer(3, GL11.GL_FLOAT, 0, 0);
-        GlStateManager.glDrawArrays(GL11.GL_LINE_STRIP, 0, this.numVertices);
+        GL14.glMultiDrawArrays(GL11.GL_LINE_STRIP, this.firsts, this.counts);
 
         // post draw
         OpenGlHelper.glBindBuffer(GL_ARRAY_BUFFER, 0);
         GlStateManager.glDisableClientState(GL11.GL_VERTEX_ARRAY);
+        GlStateManager.popMatrix();
         GlStateManager.resetColor(); // probably not needed
     }
 
     // Must be called before throwing away this renderer
     public void deleteBuffer() {
-        OpenGlHelper.glDeleteBuffers(this.bufferId);
+        if (this.bufferId != -1) {
+            OpenGlHelper.glDeleteBuffers(this.bufferId);
+            this.bufferId = -1;
+            this.uploadedCapacity = 0;
+        }
     }
 }
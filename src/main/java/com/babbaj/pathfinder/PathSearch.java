@@ -0,0 +1,67 @@
+package com.babbaj.pathfinder;
+
+import dev.babbaj.pathfinder.NetherPathfinder;
+import dev.babbaj.pathfinder.PathSegment;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// The loop that keeps asking the native pathfinder for the next segment until it reaches the goal, doesn't depend on the client
+public final class PathSearch {
+    public enum Status {
+        FOUND,
+        // the deadline passed, whatever was found before it is still valid
+        TIMED_OUT,
+        CANCELLED,
+        NO_PATH,
+        // an exception stopped the search, only reported by callers that catch it
+        FAILED
+    }
+
+    public interface SegmentSink {
+        // Returns false to stop the search
+        boolean accept(long[] packed);
+    }
+
+    private PathSearch() {}
+
+    public static Status run(ContextPool.Lease lease, long start, long end, boolean raytrace, SegmentSizer sizer, AtomicBoolean cancelled, SegmentSink sink) {
+        int startX = PackedPos.x(start);
+        int startY = PackedPos.y(start);
+        int startZ = PackedPos.z(start);
+        final int endX = PackedPos.x(end);
+        final int endY = PackedPos.y(end);
+        final int endZ = PackedPos.z(end);
+        PathSegment segment;
+        do {
+            if (cancelled.get()) {
+                return Status.CANCELLED;
+            }
+            if (sizer.isExpired()) {
+                return Status.TIMED_OUT;
+            }
+            final int size = sizer.next();
+            final long t1 = System.nanoTime();
+            segment = NetherPathfinder.pathFind(lease.context(), startX, startY, startZ, endX, endY, endZ, true, raytrace, size);
+            final long nanos = System.nanoTime() - t1;
+            sizer.record(size, nanos);
+            PathfinderMetrics.SEGMENT_NATIVE.record(nanos);
+            PathfinderMetrics.SEGMENT_SIZE.record(size);
+            if (cancelled.get()) {
+                return Status.CANCELLED;
+            }
+            if (segment == null) {
+                return Status.NO_PATH;
+            }
+            PathfinderMetrics.SEGMENT_POINTS.record(segment.packed.length);
+            lease.recordSegment(segment.packed);
+            if (!sink.accept(segment.packed)) {
+                return Status.CANCELLED;
+            }
+            final long last = segment.packed[segment.packed.length - 1];
+            startX = PackedPos.x(last);
+            startY = PackedPos.y(last);
+            startZ = PackedPos.z(last);
+        } while (!segment.finished);
+        return Status.FOUND;
+    }
+}
@@ -0,0 +1,137 @@
+package com.babbaj.pathfinder;
+
+/**
+ * A named search and the path it produced. Every session has its own renderer and {@link ActivePath} so sessions can
+ * be searched, shown, cancelled and reset independently of each other.
+ */
+public class PathSession {
+    public final String name;
+    public final PathRenderer renderer;
+    public final ActivePath activePath;
+    public final PathValidator validator;
+    // the search that is filling this session's path, null once it is done or cancelled
+    public PathFinder pathFinder;
+    // replaces the coarse path of a --progressive search once it is complete, null if there is nothing to refine
+    public PathRefiner refiner;
+    // where the player was last seen on the path, kept while they are away from it
+    private PathIndex.Projection progress;
+    private int progressVersion;
+    private long progressNanos;
+    private boolean onRoute;
+    // blocks per second along the path, smoothed over a few seconds
+    private double speed;
+
+    private static final double SPEED_SMOOTHING_SECONDS = 5;
+
+    public PathSession(String name, float red, float green, float blue, PathValidator validator) {
+        this.name = name;
+        this.validator = validator;
+        this.renderer = new PathRenderer();
+        this.renderer.setColor(red, green, blue);
+        this.activePath = new ActivePath(this.renderer.getBuffer());
+    }
+
+    public boolean isSearching() {
+        return this.pathFinder != null && !this.pathFinder.future.isDone();
+    }
+
+    // True once nothing is being added to the path anymore
+    public boolean isSettled() {
+        return this.refiner == null && (this.pathFinder == null || (this.pathFinder.future.isDone() && this.pathFinder.resultQueue.isEmpty()));
+    }
+
+    // Returns true if there was a search to stop
+    public boolean cancel() {
+        if (this.refiner != null) {
+            this.refiner.cancel();
+            this.refiner = null;
+        }
+        if (this.pathFinder == null) return false;
+        final boolean running = !this.pathFinder.future.isDone();
+        this.pathFinder.cancelled.set(true);
+        this.pathFinder = null;
+        return running;
+    }
+
+    public void reset() {
+        cancel();
+        this.activePath.clear();
+        this.validator.reset();
+        this.progress = null;
+        this.onRoute = false;
+    }
+
+    // Follows the player along the path, returns true when they just left it
+    public boolean trackProgress(double x, double y, double z, double offRouteBlocks) {
+        final long now = System.nanoTime();
+        final PathIndex.Projection projection = this.activePath.project(x, y, z, offRouteBlocks);
+        final boolean wasOnRoute = this.onRoute;
+        this.onRoute = projection != null;
+        if (projection == null) return wasOnRoute;
+        if (this.progress != null && this.progressVersion == this.activePath.getVersion() && now > this.progressNanos) {
+            final double seconds = (now - this.progressNanos) / 1e9;
+            final double current = (projection.along - this.progress.along) / seconds;
+            this.speed += (current - this.speed) * Math.min(1, seconds / SPEED_SMOOTHING_SECONDS);
+        } else {
+            // the path changed so the distance along it can't be compared
+            this.speed = 0;
+        }
+        this.progress = projection;
+        this.progressVersion = this.activePath.getVersion();
+        this.progressNanos = now;
+        return false;
+    }
+
+    // Null until the player has been close to the path
+    public PathIndex.Projection getProgress() {
+        return this.progressVersion == this.activePath.getVersion() ? this.progress : null;
+    }
+
+    public boolean isOnRoute() {
+        return this.onRoute;
+    }
+
+    public double getSpeed() {
+        return this.speed;
+    }
+
+    // Takes finished segments from the search, startNanos is when this tick's ingest budget started
+    public void tick(SegmentIngester ingester, long startNanos) {
+        if (this.pathFinder == null) return;
+        final PathFinder current = this.pathFinder;
+        final PathSearch.Status status = current.future.getNow(null);
+        if (status != null && status != PathSearch.Status.FOUND && status != PathSearch.Status.TIMED_OUT) {
+            if (!current.replan) {
+                this.activePath.clear();
+            }
+            this.pathFinder = null;
+            if (this.refiner != null) {
+                this.refiner.cancel();
+                this.refiner = null;
+            }
+        } else {
+            final int taken = ingester.ingest(current.resultQueue, segment -> {
+                if (current.beforeFirstSegment != null) {
+                    current.beforeFirstSegment.run();
+                    current.beforeFirstSegment = null;
+                }
+                this.activePath.insert(current.insertIndex++, segment);
+            }, startNanos);
+            if (taken > 0 && !current.receivedSegment) {
+                current.receivedSegment = true;
+                final long nanos = System.nanoTime() - current.startNanos;
+                PathfinderMetrics.FIRST_SEGMENT.record(nanos);
+                (current.warmStart.getAsBoolean() ? PathfinderMetrics.FIRST_SEGMENT_WARM : PathfinderMetrics.FIRST_SEGMENT_COLD).record(nanos);
+            }
+            if (this.refiner != null && status != null && current.resultQueue.isEmpty() && this.refiner.tick(this.activePath)) {
+                this.refiner = null;
+            }
+        }
+    }
+
+    // Must be called on the render thread before the session is dropped
+    public void delete() {
+        reset();
+        this.renderer.deleteBuffer();
+    }
+}
@@ -0,0 +1,68 @@
+package com.babbaj.pathfinder;
+
+/**
+ * Douglas-Peucker simplification of packed paths. Instead of running once per tolerance this computes, for every point,
+ * the largest tolerance at which Douglas-Peucker would still keep it. Every level of detail can then be read off the
+ * same array.
+ */
+public final class PathSimplifier {
+    private PathSimplifier() {}
+
+    /**
+     * Fills {@code importance[from..to]} so that running Douglas-Peucker on {@code path[from..to]} with tolerance t keeps
+     * exactly the points with {@code importance > t}. The two end points are always kept.
+     */
+    public static void computeImportance(long[] path, int from, int to, double[] importance) {
+        importance[from] = Double.POSITIVE_INFINITY;
+        importance[to] = Double.POSITIVE_INFINITY;
+        if (to - from < 2) return;
+        // stack of (start, end, bound) where bound is the importance of the point that created the interval
+        final int[] stack = new int[(to - from + 1) * 2];
+        final double[] bounds = new double[to - from + 1];
+        int top = 0;
+        stack[0] = from;
+        stack[1] = to;
+        bounds[0] = Double.POSITIVE_INFINITY;
+        top++;
+        while (top > 0) {
+            top--;
+            final int a = stack[top * 2];
+            final int b = stack[top * 2 + 1];
+            final double bound = bounds[top];
+            if (b - a < 2) continue;
+
+            int furthest = -1;
+            double maxDistSq = -1;
+            for (int i = a + 1; i < b; i++) {
+                final double d = distanceSq(path[i], path[a], path[b]);
+                if (d > maxDistSq) {
+                    maxDistSq = d;
+                    furthest = i;
+                }
+            }
+            // a point can't outlive the point that split its interval
+            final double value = Math.min(Math.sqrt(maxDistSq), bound);
+            importance[furthest] = value;
+            stack[top * 2] = a;
+            stack[top * 2 + 1] = furthest;
+            bounds[top] = value;
+            top++;
+            stack[top * 2] = furthest;
+            stack[top * 2 + 1] = b;
+            bounds[top] = value;
+            top++;
+        }
+    }
+
+    // Squared distance from p to the line segment between a and b
+    public static double distanceSq(long p, long a, long b) {
+        final double ax = PackedPos.x(a), ay = PackedPos.y(a), az = PackedPos.z(a);
+        final double dx = PackedPos.x(b) - ax, dy = PackedPos.y(b) - ay, dz = PackedPos.z(b) - az;
+        final double px = PackedPos.x(p) - ax, py = PackedPos.y(p) - ay, pz = PackedPos.z(p) - az;
+        final double lengthSq = dx * dx + dy * dy + dz * dz;
+        double t = lengthSq == 0 ? 0 : (px * dx + py * dy + pz * dz) / lengthSq;
+        t = Math.max(0, Math.min(1, t));
+        final double ex = px - t * dx, ey = py - t * dy, ez = pz - t * dz;
+        return ex * ex + ey * ey + ez * ez;
+    }
+}
@@ -0,0 +1,352 @@
+package com.babbaj.pathfinder;
+
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.client.multiplayer.WorldClient;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Checks a finished path against the blocks the client has loaded, the seed doesn't know about anything players built.
+ * The chunk sections the path goes through are copied on the client thread a few per tick and checked on a background
+ * worker. A blocked stretch is searched around with {@link LocalRepair} in a small box of loaded blocks and the way
+ * around it is spliced into the {@link ActivePath}, which starts the next pass.
+ */
+public class PathValidator {
+    private final PathfinderScheduler scheduler;
+    private final Consumer<String> messages;
+
+    // version of the path the current pass is checking, results for other versions are thrown away
+    private int version = -1;
+    private CompletableFuture<Map<Long, Cells>> raster;
+    private ArrayDeque<Long> pending;
+    private CompletableFuture<List<long[]>> scan;
+    // blocked cells found in this pass as {pos, segment, step}
+    private final List<long[]> blocked = new ArrayList<>();
+    private CompletableFuture<Repair> repair;
+    // System.nanoTime() when the last pass finished, -1 while one is running
+    private long passDone = -1;
+    // stretches that could not be repaired are only reported once per version of the path
+    private final Set<Long> reported = new HashSet<>();
+
+    // Positions on the path grouped by chunk section, each as {pos, segment, step}
+    private static final class Cells {
+        long[] data = new long[48];
+        int size;
+
+        void add(long pos, long segment, int step) {
+            if (this.size + 3 > this.data.length) {
+                this.data = Arrays.copyOf(this.data, this.data.length * 2);
+            }
+            this.data[this.size++] = pos;
+            this.data[this.size++] = segment;
+            this.data[this.size++] = step;
+        }
+    }
+
+    private static final class Repair {
+        final int version;
+        final ActivePath.Location from;
+        final ActivePath.Location to;
+        final long blockedAt;
+        final long[] corners;
+
+        Repair(int version, ActivePath.Location from, ActivePath.Location to, long blockedAt, long[] corners) {
+            this.version = version;
+            this.from = from;
+            this.to = to;
+            this.blockedAt = blockedAt;
+            this.corners = corners;
+        }
+    }
+
+    public PathValidator(PathfinderScheduler scheduler, Consumer<String> messages) {
+        this.scheduler = scheduler;
+        this.messages = messages;
+    }
+
+    // A segment is the line from a point to the next point in the same part
+    private static long segment(int part, int point) {
+        return ((long) part << 32) | point;
+    }
+
+    private static int part(long segment) {
+        return (int) (segment >>> 32);
+    }
+
+    private static int point(long segment) {
+        return (int) segment;
+    }
+
+    private static int steps(long a, long b) {
+        return Math.max(Math.abs(PackedPos.x(b) - PackedPos.x(a)), Math.max(Math.abs(PackedPos.y(b) - PackedPos.y(a)), Math.abs(PackedPos.z(b) - PackedPos.z(a))));
+    }
+
+    private static long stepAlong(long a, long b, int step, int steps) {
+        final double t = step / (double) steps;
+        return PackedPos.pack(
+            (int) Math.round(PackedPos.x(a) + (PackedPos.x(b) - PackedPos.x(a)) * t),
+            (int) Math.round(PackedPos.y(a) + (PackedPos.y(b) - PackedPos.y(a)) * t),
+            (int) Math.round(PackedPos.z(a) + (PackedPos.z(b) - PackedPos.z(a)) * t));
+    }
+
+    private static long sectionKey(long pos) {
+        return PackedPos.pack(PackedPos.x(pos) >> 4, PackedPos.y(pos) >> 4, PackedPos.z(pos) >> 4);
+    }
+
+    private static Map<Long, Cells> rasterize(List<long[]> parts) {
+        final Map<Long, Cells> sections = new HashMap<>();
+        for (int part = 0; part < parts.size(); part++) {
+            final long[] points = parts.get(part);
+            for (int point = 0; point + 1 < points.length; point++) {
+                final int steps = steps(points[point], points[point + 1]);
+                // the last step is the first step of the next segment
+                for (int step = 0; step < steps; step++) {
+                    final long pos = stepAlong(points[point], points[point + 1], step, steps);
+                    sections.computeIfAbsent(sectionKey(pos), k -> new Cells()).add(pos, segment(part, point), step);
+                }
+            }
+        }
+        return sections;
+    }
+
+    private static List<long[]> findBlocked(List<BlockGrid> grids, List<Cells> cells) {
+        final List<long[]> out = new ArrayList<>();
+        for (int i = 0; i < grids.size(); i++) {
+            final BlockGrid grid = grids.get(i);
+            final Cells section = cells.get(i);
+            for (int c = 0; c < section.size; c += 3) {
+                final long pos = section.data[c];
+                if (grid.isSolid(PackedPos.x(pos), PackedPos.y(pos), PackedPos.z(pos))) {
+                    out.add(new long[] {pos, section.data[c + 1], section.data[c + 2]});
+                }
+            }
+        }
+        return out;
+    }
+
+    private static boolean blocksMovement(IBlockState state) {
+        return state.getMaterial().blocksMovement();
+    }
+
+    // Copies which blocks in the box are solid, blocks in chunks that aren't loaded count as solid
+    private static BlockGrid capture(WorldClient world, int minX, int minY, int minZ, int sizeX, int sizeY, int sizeZ) {
+        final BlockGrid grid = new BlockGrid(minX, minY, minZ, sizeX, sizeY, sizeZ);
+        for (int x = minX; x < minX + sizeX; x++) {
+            for (int z = minZ; z < minZ + sizeZ; z++) {
+                final Chunk chunk = world.getChunkProvider().getLoadedChunk(x >> 4, z >> 4);
+                for (int y = minY; y < minY + sizeY; y++) {
+                    if (chunk == null) {
+                        grid.setSolid(x, y, z);
+                        continue;
+                    }
+                    final ExtendedBlockStorage storage = chunk.getBlockStorageArray()[y >> 4];
+                    if (storage != Chunk.NULL_BLOCK_STORAGE && !storage.isEmpty() && blocksMovement(storage.get(x & 15, y & 15, z & 15))) {
+                        grid.setSolid(x, y, z);
+                    }
+                }
+            }
+        }
+        return grid;
+    }
+
+    public void reset() {
+        this.version = -1;
+        this.raster = null;
+        this.pending = null;
+        this.scan = null;
+        this.blocked.clear();
+        this.repair = null;
+        this.passDone = -1;
+        this.reported.clear();
+    }
+
+    private void startPass(ActivePath path) {
+        if (path.getVersion() != this.version) {
+            this.reported.clear();
+        }
+        this.version = path.getVersion();
+        final List<long[]> parts = new ArrayList<>(path.partCount());
+        for (int i = 0; i < path.partCount(); i++) {
+            parts.add(path.partPoints(i));
+        }
+        this.raster = this.scheduler.submit(PathfinderScheduler.Priority.BACKGROUND, () -> rasterize(parts));
+        this.pending = null;
+        this.scan = null;
+        this.blocked.clear();
+        this.repair = null;
+        this.passDone = -1;
+    }
+
+    // Called every tick on the client thread once the path is done changing
+    public void tick(ActivePath path, WorldClient world) {
+        if (PathFinderConfig.validateIntervalSeconds <= 0 || path.isEmpty()) {
+            if (this.version != -1) reset();
+            return;
+        }
+        if (path.getVersion() != this.version) {
+            startPass(path);
+        } else if (this.passDone != -1) {
+            if (System.nanoTime() - this.passDone < TimeUnit.SECONDS.toNanos(PathFinderConfig.validateIntervalSeconds)) return;
+            startPass(path);
+        }
+        if (!this.raster.isDone()) return;
+        final Map<Long, Cells> cells = this.raster.exceptionally(ex -> {
+            ex.printStackTrace();
+            return Collections.emptyMap();
+        }).join();
+        if (this.pending == null) {
+            this.pending = new ArrayDeque<>(cells.keySet());
+        }
+
+        if (this.repair != null) {
+            if (this.repair.isDone()) {
+                finishRepair(path);
+            }
+            return;
+        }
+        if (this.scan != null) {
+            if (!this.scan.isDone()) return;
+            this.blocked.addAll(this.scan.exceptionally(ex -> {
+                ex.printStackTrace();
+                return Collections.emptyList();
+            }).join());
+            this.scan = null;
+        }
+        if (!this.pending.isEmpty()) {
+            final List<BlockGrid> grids = new ArrayList<>();
+            final List<Cells> batch = new ArrayList<>();
+            while (!this.pending.isEmpty() && grids.size() < PathFinderConfig.validateSectionsPerTick) {
+                final long key = this.pending.poll();
+                final int sx = PackedPos.x(key), sy = PackedPos.y(key), sz = PackedPos.z(key);
+                // sections that aren't loaded are checked in a later pass
+                if (world.getChunkProvider().getLoadedChunk(sx, sz) == null) continue;
+                grids.add(capture(world, sx << 4, sy << 4, sz << 4, 16, 16, 16));
+                batch.add(cells.get(key));
+            }
+            PathfinderMetrics.VALIDATED_SECTIONS.addAndGet(grids.size());
+            if (!grids.isEmpty()) {
+                this.scan = this.scheduler.submit(PathfinderScheduler.Priority.BACKGROUND, () -> findBlocked(grids, batch));
+            }
+            return;
+        }
+        if (!startRepair(path, world)) {
+            this.passDone = System.nanoTime();
+        }
+    }
+
+    // Starts searching around the first blocked stretch that wasn't reported yet, returns false if there is none
+    private boolean startRepair(ActivePath path, WorldClient world) {
+        if (this.blocked.isEmpty()) return false;
+        this.blocked.sort(Comparator.<long[]>comparingLong(c -> c[1]).thenComparingLong(c -> c[2]));
+        final int margin = PathFinderConfig.repairMarginBlocks;
+        int first = 0;
+        while (first < this.blocked.size()) {
+            // cells that are close to each other are one stretch
+            int last = first;
+            while (last + 1 < this.blocked.size() && ActivePath.distance(this.blocked.get(last)[0], this.blocked.get(last + 1)[0]) <= 2 * margin + 1) {
+                last++;
+            }
+            final long[] firstCell = this.blocked.get(first);
+            final long[] lastCell = this.blocked.get(last);
+            final List<long[]> stretch = this.blocked.subList(first, last + 1);
+            first = last + 1;
+            if (this.reported.contains(firstCell[0])) continue;
+            PathfinderMetrics.BLOCKED_STRETCHES.incrementAndGet();
+
+            // leave the path a little before the obstruction and rejoin it a little after
+            long fromSegment = firstCell[1];
+            int fromStep = (int) firstCell[2] - margin;
+            if (fromStep < 0 && point(fromSegment) > 0) {
+                fromSegment--;
+                final long[] points = path.partPoints(part(fromSegment));
+                fromStep += steps(points[point(fromSegment)], points[point(fromSegment) + 1]);
+            }
+            fromStep = Math.max(0, fromStep);
+            long toSegment = lastCell[1];
+            int toStep = (int) lastCell[2] + margin;
+            long[] points = path.partPoints(part(toSegment));
+            int toSteps = steps(points[point(toSegment)], points[point(toSegment) + 1]);
+            if (toStep > toSteps && point(toSegment) + 2 < points.length) {
+                toStep -= toSteps;
+                toSegment++;
+                toSteps = steps(points[point(toSegment)], points[point(toSegment) + 1]);
+            }
+            toStep = Math.min(toSteps, toStep);
+            final long[] fromPoints = path.partPoints(part(fromSegment));
+            final long start = stepAlong(fromPoints[point(fromSegment)], fromPoints[point(fromSegment) + 1], fromStep,
+                steps(fromPoints[point(fromSegment)], fromPoints[point(fromSegment) + 1]));
+            final long goal = stepAlong(points[point(toSegment)], points[point(toSegment) + 1], toStep, toSteps);
+
+            int minX = Math.min(PackedPos.x(start), PackedPos.x(goal)), maxX = Math.max(PackedPos.x(start), PackedPos.x(goal));
+            int minY = Math.min(PackedPos.y(start), PackedPos.y(goal)), maxY = Math.max(PackedPos.y(start), PackedPos.y(goal));
+            int minZ = Math.min(PackedPos.z(start), PackedPos.z(goal)), maxZ = Math.max(PackedPos.z(start), PackedPos.z(goal));
+            for (long[] cell : stretch) {
+                minX = Math.min(minX, PackedPos.x(cell[0]));
+                maxX = Math.max(maxX, PackedPos.x(cell[0]));
+                minY = Math.min(minY, PackedPos.y(cell[0]));
+                maxY = Math.max(maxY, PackedPos.y(cell[0]));
+                minZ = Math.min(minZ, PackedPos.z(cell[0]));
+                maxZ = Math.max(maxZ, PackedPos.z(cell[0]));
+            }
+            minX -= margin;
+            maxX += margin;
+            minZ -= margin;
+            maxZ += margin;
+            minY = Math.max(0, minY - margin);
+            maxY = Math.min(127, maxY + margin);
+            final long volume = (long) (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1);
+            final long blockedAt = firstCell[0];
+            if (volume > PathFinderConfig.repairMaxVolume) {
+                this.reported.add(blockedAt);
+                PathfinderMetrics.REPAIRS_FAILED.incrementAndGet();
+                this.messages.accept(String.format("Path is blocked at %d %d %d and the way around is too far to search here, use ;replan",
+                    PackedPos.x(blockedAt), PackedPos.y(blockedAt), PackedPos.z(blockedAt)));
+                continue;
+            }
+
+            final BlockGrid grid = capture(world, minX, minY, minZ, maxX - minX + 1, maxY - minY + 1, maxZ - minZ + 1);
+            final ActivePath.Location from = new ActivePath.Location(part(fromSegment), point(fromSegment));
+            final ActivePath.Location to = new ActivePath.Location(part(toSegment), point(toSegment) + 1);
+            final int repairVersion = this.version;
+            this.repair = this.scheduler.submit(PathfinderScheduler.Priority.BACKGROUND, () -> {
+                final long t1 = System.nanoTime();
+                final long[] corners = LocalRepair.search(grid, start, goal);
+                PathfinderMetrics.REPAIR_SEARCH.record(System.nanoTime() - t1);
+                return new Repair(repairVersion, from, to, blockedAt, corners);
+            });
+            return true;
+        }
+        return false;
+    }
+
+    private void finishRepair(ActivePath path) {
+        final Repair result = this.repair.exceptionally(ex -> {
+            ex.printStackTrace();
+            return null;
+        }).join();
+        this.repair = null;
+        if (result == null || result.version != path.getVersion()) return;
+
+        final long at = result.blockedAt;
+        if (result.corners == null) {
+            this.reported.add(at);
+            PathfinderMetrics.REPAIRS_FAILED.incrementAndGet();
+            this.messages.accept(String.format("Path is blocked at %d %d %d and there is no way around it in the loaded chunks, use ;replan",
+                PackedPos.x(at), PackedPos.y(at), PackedPos.z(at)));
+            return;
+        }
+        // the ends of the repair can be the points that are kept
+        int begin = 0;
+        int end = result.corners.length;
+        if (result.corners[0] == path.pointAt(result.from)) begin++;
+        if (end > begin && result.corners[end - 1] == path.pointAt(result.to)) end--;
+        path.replace(result.from, result.to, Arrays.copyOfRange(result.corners, begin, end));
+        PathfinderMetrics.REPAIRS.incrementAndGet();
+        this.messages.accept(String.format("Repaired the path around an obstruction at %d %d %d", PackedPos.x(at), PackedPos.y(at), PackedPos.z(at)));
+    }
+}
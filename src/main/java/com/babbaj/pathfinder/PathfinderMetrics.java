@@ -0,0 +1,249 @@
+package com.babbaj.pathfinder;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Process wide registry of named pathfinder metrics. Histograms and counters are updated from wherever the work happens,
+ * gauges are read from their owner when a snapshot is taken. Snapshots are shown by ;stats and can be written to disk
+ * periodically as csv rows and a json file.
+ */
+public final class PathfinderMetrics {
+    private static final Map<String, Object> METRICS = new LinkedHashMap<>();
+
+    public static final Timing FIRST_SEGMENT = timing("search.first_segment");
+    public static final Timing FIRST_SEGMENT_WARM = timing("search.first_segment_warm");
+    public static final Timing FIRST_SEGMENT_COLD = timing("search.first_segment_cold");
+    public static final Timing SEGMENT_NATIVE = timing("search.segment_native");
+    public static final Histogram SEGMENT_SIZE = histogram("search.segment_size");
+    public static final Histogram SEGMENT_POINTS = histogram("search.segment_points");
+    public static final AtomicLong SEARCHES = counter("search.started");
+    public static final AtomicLong CANCELLATIONS = counter("search.cancelled");
+    public static final AtomicLong TIMEOUTS = counter("search.timed_out");
+    public static final AtomicLong FAILURES = counter("search.failed");
+    public static final Timing SCHEDULER_QUEUE_WAIT = timing("scheduler.queue_wait");
+    public static final Timing SCHEDULER_RUN = timing("scheduler.run");
+    public static final AtomicLong CONTEXTS_CREATED = counter("context.created");
+    public static final AtomicLong CONTEXTS_FREED = counter("context.freed");
+    // contexts a search took over from the warm-up instead of creating a cold one
+    public static final AtomicLong CONTEXTS_HANDED_OVER = counter("context.handed_over");
+    public static final Histogram QUEUE_DEPTH = histogram("ingest.queue_depth");
+    public static final Timing INGEST_TICK = timing("ingest.tick");
+    public static final Timing INGEST_LATENCY = timing("ingest.latency");
+    public static final Histogram UPLOAD_BYTES = histogram("render.upload_bytes");
+    public static final Timing RENDER_FRAME = timing("render.frame");
+    public static final Timing WARMUP_TIME = timing("warmup.time");
+    public static final AtomicLong WARMUP_SEGMENTS = counter("warmup.segments");
+    public static final AtomicLong WARMUPS_PREEMPTED = counter("warmup.preempted");
+    public static final AtomicLong VALIDATED_SECTIONS = counter("validate.sections");
+    public static final AtomicLong BLOCKED_STRETCHES = counter("validate.blocked");
+    public static final AtomicLong REPAIRS = counter("repair.done");
+    public static final AtomicLong REPAIRS_FAILED = counter("repair.failed");
+    public static final Timing REPAIR_SEARCH = timing("repair.search");
+    // whole routes searched directly and through the hub network, to compare the two
+    public static final Timing SEARCH_ROUTE = timing("search.route");
+    public static final Timing NETWORK_ROUTE = timing("network.route");
+    public static final AtomicLong NETWORK_CORRIDORS_BUILT = counter("network.corridors_built");
+    public static final Timing NETWORK_BUILD = timing("network.build");
+    // time from starting a --progressive search until its coarse path is complete and until all of it is refined
+    public static final Timing PROGRESSIVE_COARSE = timing("progressive.coarse");
+    public static final Timing PROGRESSIVE_REFINED = timing("progressive.refined");
+    // time init blocks mod loading and time until commands can run
+    public static final Timing STARTUP_INIT = timing("startup.init");
+    public static final Timing STARTUP_READY = timing("startup.ready");
+
+    private static final String CSV_HEADER = "time,metric,count,mean,p50,p90,p99,max,unit";
+
+    private static final Object EXPORT_LOCK = new Object();
+    private static ScheduledExecutorService exporter;
+    private static ScheduledFuture<?> exportTask;
+
+    private PathfinderMetrics() {}
+
+    private static <T> T register(String name, T metric) {
+        synchronized (METRICS) {
+            METRICS.put(name, metric);
+        }
+        return metric;
+    }
+
+    public static Timing timing(String name) {
+        return register(name, new Timing());
+    }
+
+    public static Histogram histogram(String name) {
+        return register(name, new Histogram());
+    }
+
+    public static AtomicLong counter(String name) {
+        return register(name, new AtomicLong());
+    }
+
+    // Replaces any gauge with the same name, the supplier is called from whichever thread takes the snapshot
+    public static void gauge(String name, LongSupplier value) {
+        register(name, value);
+    }
+
+    public static final class Row {
+        public final String name;
+        public final long count;
+        public final double mean;
+        public final double p50;
+        public final double p90;
+        public final double p99;
+        public final double max;
+        public final String unit;
+
+        Row(String name, long count, double mean, double p50, double p90, double p99, double max, String unit) {
+            this.name = name;
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.max = max;
+            this.unit = unit;
+        }
+
+        public boolean isHistogram() {
+            return !Double.isNaN(this.mean);
+        }
+
+        @Override
+        public String toString() {
+            if (!isHistogram()) return this.name + ": " + this.count;
+            return String.format(Locale.ROOT, "%s: n=%d p50=%.1f%s p90=%.1f%s p99=%.1f%s max=%.1f%s", this.name, this.count,
+                this.p50, this.unit, this.p90, this.unit, this.p99, this.unit, this.max, this.unit);
+        }
+    }
+
+    public static List<Row> snapshot() {
+        final List<Map.Entry<String, Object>> metrics;
+        synchronized (METRICS) {
+            metrics = new ArrayList<>(METRICS.entrySet());
+        }
+        final List<Row> rows = new ArrayList<>(metrics.size());
+        for (Map.Entry<String, Object> entry : metrics) {
+            final Object metric = entry.getValue();
+            if (metric instanceof Histogram) {
+                final Histogram histogram = (Histogram) metric;
+                final long[] p = histogram.percentiles(50, 90, 99);
+                rows.add(new Row(entry.getKey(), histogram.getCount(), histogram.scale((long) histogram.getMean()),
+                    histogram.scale(p[0]), histogram.scale(p[1]), histogram.scale(p[2]), histogram.scale(histogram.getMax()), histogram.unit()));
+            } else {
+                final long value = metric instanceof AtomicLong ? ((AtomicLong) metric).get() : ((LongSupplier) metric).getAsLong();
+                rows.add(new Row(entry.getKey(), value, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, ""));
+            }
+        }
+        return rows;
+    }
+
+    // Appends the current values to the csv file and replaces the json file with them. Exports never overlap, they would
+    // mix their csv rows and share the temporary json file
+    public static void export(Path csv, Path json) throws IOException {
+        synchronized (EXPORT_LOCK) {
+            writeExport(csv, json);
+        }
+    }
+
+    private static void writeExport(Path csv, Path json) throws IOException {
+        final long time = System.currentTimeMillis();
+        final List<Row> rows = snapshot();
+
+        final boolean header = !Files.exists(csv);
+        try (Writer out = Files.newBufferedWriter(csv, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            if (header) {
+                out.write(CSV_HEADER);
+                out.write('\n');
+            }
+            for (Row row : rows) {
+                if (row.isHistogram()) {
+                    out.write(String.format(Locale.ROOT, "%d,%s,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%s\n", time, row.name, row.count,
+                        row.mean, row.p50, row.p90, row.p99, row.max, row.unit));
+                } else {
+                    out.write(String.format(Locale.ROOT, "%d,%s,%d,,,,,,\n", time, row.name, row.count));
+                }
+            }
+        }
+
+        final JsonObject root = new JsonObject();
+        root.addProperty("time", time);
+        final JsonObject metrics = new JsonObject();
+        for (Row row : rows) {
+            if (row.isHistogram()) {
+                final JsonObject obj = new JsonObject();
+                obj.addProperty("count", row.count);
+                obj.addProperty("mean", row.mean);
+                obj.addProperty("p50", row.p50);
+                obj.addProperty("p90", row.p90);
+                obj.addProperty("p99", row.p99);
+                obj.addProperty("max", row.max);
+                obj.addProperty("unit", row.unit);
+                metrics.add(row.name, obj);
+            } else {
+                metrics.addProperty(row.name, row.count);
+            }
+        }
+        root.add("metrics", metrics);
+        // written next to the real file and moved over it so readers never see half a file
+        final Path tmp = json.resolveSibling(json.getFileName() + ".tmp");
+        Files.write(tmp, new GsonBuilder().setPrettyPrinting().create().toJson(root).getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, json, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Exports every intervalSeconds on a daemon thread, an interval of 0 stops exporting
+    public static synchronized void startExport(Path csv, Path json, int intervalSeconds) {
+        if (exportTask != null) {
+            exportTask.cancel(false);
+            exportTask = null;
+        }
+        if (intervalSeconds <= 0) return;
+        exportTask = exporter().scheduleAtFixedRate(() -> {
+            try {
+                export(csv, json);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    // Exports once on the export thread so the caller doesn't wait for the disk
+    public static CompletableFuture<Void> exportNow(Path csv, Path json) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                export(csv, json);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }, exporter());
+    }
+
+    private static synchronized ScheduledExecutorService exporter() {
+        if (exporter == null) {
+            exporter = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, "Pathfinder Metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return exporter;
+    }
+}
@@ -0,0 +1,110 @@
+package com.babbaj.pathfinder;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Runs pathfinding work on its own low priority daemon threads so long native searches don't take over the common pool.
+ * Interactive requests are always run before queued background work.
+ */
+public class PathfinderScheduler {
+    public enum Priority {
+        INTERACTIVE,
+        BACKGROUND
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final int queueCapacity;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final Timing queueWait = PathfinderMetrics.SCHEDULER_QUEUE_WAIT;
+    private final Timing runTime = PathfinderMetrics.SCHEDULER_RUN;
+
+    public PathfinderScheduler(int workers, int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+        final AtomicInteger threadId = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 30, TimeUnit.SECONDS, new PriorityBlockingQueue<>(), r -> {
+            final Thread thread = new Thread(r, "Pathfinder Worker #" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    public static PathfinderScheduler fromConfig() {
+        final int workers = PathFinderConfig.schedulerWorkers > 0
+            ? PathFinderConfig.schedulerWorkers
+            : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        return new PathfinderScheduler(workers, PathFinderConfig.schedulerQueueCapacity);
+    }
+
+    public <T> CompletableFuture<T> submit(Priority priority, Supplier<T> work) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        if (this.queued.incrementAndGet() > this.queueCapacity) {
+            this.queued.decrementAndGet();
+            future.completeExceptionally(new RejectedExecutionException("Pathfinder queue is full (" + this.queueCapacity + " requests)"));
+            return future;
+        }
+        this.executor.execute(new Task<>(priority, this.sequence.getAndIncrement(), work, future));
+        return future;
+    }
+
+    public int getWorkers() {
+        return this.executor.getMaximumPoolSize();
+    }
+
+    public int getQueueDepth() {
+        return this.queued.get();
+    }
+
+    public int getActiveCount() {
+        return this.executor.getActiveCount();
+    }
+
+    public Timing getQueueWait() {
+        return this.queueWait;
+    }
+
+    public Timing getRunTime() {
+        return this.runTime;
+    }
+
+    private final class Task<T> implements Runnable, Comparable<Task<?>> {
+        private final Priority priority;
+        private final long sequence;
+        private final Supplier<T> work;
+        private final CompletableFuture<T> future;
+        private final long submitted = System.nanoTime();
+
+        Task(Priority priority, long sequence, Supplier<T> work, CompletableFuture<T> future) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.work = work;
+            this.future = future;
+        }
+
+        @Override
+        public void run() {
+            queued.decrementAndGet();
+            final long start = System.nanoTime();
+            queueWait.record(start - this.submitted);
+            try {
+                this.future.complete(this.work.get());
+            } catch (Throwable ex) {
+                this.future.completeExceptionally(ex);
+            } finally {
+                runTime.record(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public int compareTo(Task<?> o) {
+            final int cmp = this.priority.compareTo(o.priority);
+            return cmp != 0 ? cmp : Long.compare(this.sequence, o.sequence);
+        }
+    }
+}
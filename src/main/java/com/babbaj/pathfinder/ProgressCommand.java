@@ -0,0 +1,56 @@
+package com.babbaj.pathfinder;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import net.minecraft.client.Minecraft;
+import net.minecraft.entity.Entity;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.babbaj.pathfinder.ExamplePathfinderControl.prefix;
+import static com.babbaj.pathfinder.ExamplePathfinderControl.sendMessage;
+
+/**
+ * {@code ;progress}, tells how far along their path the player is in every session and when they will get to its end.
+ */
+final class ProgressCommand implements ExamplePathfinderControl.ICommand {
+    private final ExamplePathfinderControl control;
+
+    ProgressCommand(ExamplePathfinderControl control, OptionParser parser) {
+        this.control = control;
+    }
+
+    @Override
+    public String description() {
+        return "Show how much of the path is left and when it will be done";
+    }
+
+    @Override
+    public List<String> usage() {
+        return Arrays.asList(
+            "(every session)",
+            "<session>"
+        );
+    }
+
+    @Override
+    public void accept(List<String> args, OptionSet options) {
+        final Entity player = Minecraft.getMinecraft().player;
+        for (PathSession session : this.control.selectSessions(args)) {
+            final PathIndex.Projection projection = session.activePath.project(player.posX, player.posY, player.posZ, Double.POSITIVE_INFINITY);
+            if (projection == null) {
+                sendMessage(prefix(session) + "No path");
+                continue;
+            }
+            final double length = session.activePath.length();
+            final double left = length - projection.along;
+            final double speed = session.getSpeed();
+            final String eta = session.isOnRoute() && speed > 0.5
+                ? String.format("%.0f seconds at %.1f blocks/s", left / speed, speed)
+                : "unknown";
+            sendMessage(prefix(session) + String.format("%d of %d blocks left (%.1f%% done), %d blocks from the path, ETA %s",
+                Math.round(left), Math.round(length), length > 0 ? 100 * projection.along / length : 100.0, Math.round(projection.distance), eta));
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.babbaj.pathfinder;
+
+import dev.babbaj.pathfinder.NetherPathfinder;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs a fixed corpus of routes through the same {@link RouteSearch} loop that ;pathfind uses and compares wall time,
+ * segment count and path length with a baseline file. The corpus uses the route file format of {@link BatchRouter}.
+ * Every route is run a few times on a new context each time and the median time is kept, so the numbers don't depend on
+ * which route happened to warm a context. The process exits with 1 if a route got slower, longer or stopped being found,
+ * or if a route is not in the baseline.
+ * <p>
+ * The baseline is a tab separated file with one line per route: the route as written in the corpus, status, milliseconds,
+ * segments and length in blocks. {@code --record} rewrites it from the current run and is the only way to run without one.
+ */
+public final class RegressionSuite {
+    private static final String RECORDED_WITH = "# recorded with ";
+
+    private RegressionSuite() {}
+
+    private static final class Measurement {
+        final PathSearch.Status status;
+        final long millis;
+        final int segments;
+        final double length;
+
+        Measurement(PathSearch.Status status, long millis, int segments, double length) {
+            this.status = status;
+            this.millis = millis;
+            this.segments = segments;
+            this.length = length;
+        }
+    }
+
+    private static final class Tolerances {
+        final double time;
+        final long timeMillis;
+        final double segments;
+        final double length;
+
+        Tolerances(double time, long timeMillis, double segments, double length) {
+            this.time = time;
+            this.timeMillis = timeMillis;
+            this.segments = segments;
+            this.length = length;
+        }
+    }
+
+    // The route written the same way as in the corpus, this is what baseline lines are matched by
+    private static String key(BatchRouter.Route route) {
+        final StringBuilder sb = new StringBuilder().append(route.seed);
+        for (long pos : route.points) {
+            sb.append(' ').append(PackedPos.x(pos)).append(',').append(PackedPos.y(pos)).append(',').append(PackedPos.z(pos));
+        }
+        return sb.toString();
+    }
+
+    private static Map<String, Measurement> readBaseline(Path file) throws IOException {
+        final Map<String, Measurement> baseline = new LinkedHashMap<>();
+        if (!Files.exists(file)) return baseline;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            final String[] cols = line.split("\t");
+            if (cols.length != 5) throw new IllegalArgumentException("Malformed baseline line: " + line);
+            baseline.put(cols[0], new Measurement(PathSearch.Status.valueOf(cols[1]), Long.parseLong(cols[2]),
+                Integer.parseInt(cols[3]), Double.parseDouble(cols[4])));
+        }
+        return baseline;
+    }
+
+    // The settings line written by --record, comparing runs made with different settings means nothing
+    private static String recordedSettings(Path file) throws IOException {
+        if (!Files.exists(file)) return null;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.startsWith(RECORDED_WITH)) return line.substring(RECORDED_WITH.length());
+        }
+        return null;
+    }
+
+    private static void writeBaseline(Path file, Map<String, Measurement> results, String settings) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        lines.add("# route\tstatus\tmillis\tsegments\tlength");
+        lines.add(RECORDED_WITH + settings);
+        results.forEach((key, m) -> lines.add(String.format(Locale.ROOT, "%s\t%s\t%d\t%d\t%.1f", key, m.status, m.millis, m.segments, m.length)));
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, lines, StandardCharsets.UTF_8);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // One run of the route on a context nobody used before, segments are taken off the queue like the client tick does
+    private static Measurement run(BatchRouter.Route route, PathfinderScheduler scheduler, boolean raytrace, SegmentSizer.Settings sizing) {
+        final ContextPool pool = ContextPool.fromConfig();
+        try {
+            final SegmentQueue<LodSegment> queue = SegmentQueue.fromConfig();
+            final List<Long> points = new ArrayList<>();
+            for (long pos : route.points) points.add(pos);
+            final RouteSearch search = new RouteSearch(points, raytrace, sizing, new AtomicBoolean(), queue);
+            final long t1 = System.nanoTime();
+            final CompletableFuture<PathSearch.Status> future = search.start(scheduler, PathfinderScheduler.Priority.INTERACTIVE, pool, null, route.seed);
+            int segments = 0;
+            double length = 0;
+            while (!future.isDone() || !queue.isEmpty()) {
+                final LodSegment segment = queue.poll();
+                if (segment == null) {
+                    Thread.yield();
+                    continue;
+                }
+                segments++;
+                length += ActivePath.length(segment.full());
+            }
+            final long millis = (System.nanoTime() - t1) / 1_000_000;
+            return new Measurement(future.join(), millis, segments, length);
+        } finally {
+            // a leg that failed may still be running, its context is freed when it is done with it
+            pool.close();
+        }
+    }
+
+    private static Measurement measure(BatchRouter.Route route, PathfinderScheduler scheduler, boolean raytrace, SegmentSizer.Settings sizing, int runs) {
+        final List<Measurement> measurements = new ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+            measurements.add(run(route, scheduler, raytrace, sizing));
+        }
+        measurements.sort(Comparator.comparingLong(m -> m.millis));
+        return measurements.get(measurements.size() / 2);
+    }
+
+    // Empty if the measurement is within the tolerances, otherwise what got worse
+    private static List<String> compare(Measurement base, Measurement now, Tolerances tolerances) {
+        final List<String> problems = new ArrayList<>();
+        if (now.status != base.status) {
+            problems.add("status " + base.status + " -> " + now.status);
+        }
+        if (now.millis > base.millis * (1 + tolerances.time) + tolerances.timeMillis) {
+            problems.add(String.format(Locale.ROOT, "time %dms -> %dms (%+.0f%%)", base.millis, now.millis, change(base.millis, now.millis)));
+        }
+        if (now.segments > base.segments * (1 + tolerances.segments)) {
+            problems.add(String.format(Locale.ROOT, "segments %d -> %d (%+.0f%%)", base.segments, now.segments, change(base.segments, now.segments)));
+        }
+        if (now.length > base.length * (1 + tolerances.length)) {
+            problems.add(String.format(Locale.ROOT, "length %.0f -> %.0f blocks (%+.1f%%)", base.length, now.length, change(base.length, now.length)));
+        }
+        return problems;
+    }
+
+    private static double change(double base, double now) {
+        return base == 0 ? 0 : 100 * (now - base) / base;
+    }
+
+    private static double doubleOption(OptionSet options, String name, double def) {
+        return options.has(name) ? Double.parseDouble((String) options.valueOf(name)) : def;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final OptionParser parser = new OptionParser();
+        parser.accepts("record");
+        parser.accepts("runs").withRequiredArg();
+        parser.accepts("segment").withRequiredArg();
+        parser.accepts("noraytrace");
+        parser.accepts("time-tolerance").withRequiredArg();
+        parser.accepts("time-slack").withRequiredArg();
+        parser.accepts("segment-tolerance").withRequiredArg();
+        parser.accepts("length-tolerance").withRequiredArg();
+        final OptionSet options = parser.parse(args);
+        final List<?> files = options.nonOptionArguments();
+        if (files.size() != 2) {
+            System.err.println("Usage: RegressionSuite <corpus file> <baseline file> [--record] [--runs <n>] [--segment <size>] [--noraytrace]"
+                + " [--time-tolerance <fraction>] [--time-slack <ms>] [--segment-tolerance <fraction>] [--length-tolerance <fraction>]");
+            System.exit(2);
+        }
+        if (!NetherPathfinder.isThisSystemSupported()) {
+            System.err.println("Nether pathfinder is not supported on this system");
+            System.exit(1);
+        }
+        final List<BatchRouter.Route> routes = BatchRouter.readRoutes(Paths.get(files.get(0).toString()));
+        final Path baselineFile = Paths.get(files.get(1).toString());
+        final int runs = options.has("runs") ? Integer.parseInt((String) options.valueOf("runs")) : 3;
+        if (runs <= 0) throw new IllegalArgumentException("Run count must be positive");
+        final SegmentSizer.Settings sizing = options.has("segment")
+            ? SegmentSizer.Settings.fixed(Integer.parseInt((String) options.valueOf("segment")))
+            : SegmentSizer.Settings.fromConfig();
+        final boolean raytrace = !options.has("noraytrace");
+        // timing is noisy so it gets more room than the path itself, which only changes when the search does
+        final Tolerances tolerances = new Tolerances(
+            doubleOption(options, "time-tolerance", 0.25),
+            (long) doubleOption(options, "time-slack", 50),
+            doubleOption(options, "segment-tolerance", 0.25),
+            doubleOption(options, "length-tolerance", 0.01));
+        final String settings = String.format(Locale.ROOT, "%d runs, %s segments, raytrace %s",
+            runs, sizing.adaptive ? "adaptive" : "fixed " + sizing.initial, raytrace);
+
+        final Map<String, Measurement> baseline = readBaseline(baselineFile);
+        if (!options.has("record") && baseline.isEmpty()) {
+            // nothing would be compared and the run would pass no matter what
+            System.err.println("The baseline " + baselineFile + " has no routes, record one with --record");
+            System.exit(1);
+        }
+        final String recorded = recordedSettings(baselineFile);
+        if (!options.has("record") && recorded != null && !recorded.equals(settings)) {
+            System.out.println("Warning: the baseline was recorded with " + recorded + " but this run uses " + settings);
+        }
+        final Map<String, Measurement> results = new LinkedHashMap<>();
+        final List<String> report = new ArrayList<>();
+        int regressions = 0;
+        int missing = 0;
+        // one route at a time so routes don't compete for the processors, legs of a route still run in parallel
+        final PathfinderScheduler scheduler = PathfinderScheduler.fromConfig();
+        for (BatchRouter.Route route : routes) {
+            final String key = key(route);
+            final Measurement now = measure(route, scheduler, raytrace, sizing, runs);
+            results.put(key, now);
+            final String line = String.format(Locale.ROOT, "route %d: %s in %dms, %d segments, %.0f blocks", route.index, now.status, now.millis, now.segments, now.length);
+            System.out.println(line);
+            final Measurement base = baseline.get(key);
+            if (base == null) {
+                missing++;
+                report.add("NEW   route " + route.index + " (" + key + "): not in the baseline, record it with --record");
+                continue;
+            }
+            final List<String> problems = compare(base, now, tolerances);
+            if (!problems.isEmpty()) {
+                regressions++;
+                report.add("WORSE route " + route.index + " (" + key + "): " + String.join(", ", problems));
+            }
+        }
+
+        if (options.has("record")) {
+            writeBaseline(baselineFile, results, settings);
+            System.out.println("Recorded " + results.size() + " routes to " + baselineFile);
+            return;
+        }
+        System.out.println();
+        System.out.println("Compared with " + baselineFile + " (" + settings + ")");
+        report.forEach(System.out::println);
+        System.out.println(String.format(Locale.ROOT, "%d routes: %d regressed, %d not in the baseline", routes.size(), regressions, missing));
+        System.exit(regressions > 0 || missing > 0 ? 1 : 0);
+    }
+}
@@ -0,0 +1,93 @@
+package com.babbaj.pathfinder;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import net.minecraft.client.Minecraft;
+import net.minecraft.entity.Entity;
+import net.minecraft.util.math.BlockPos;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.babbaj.pathfinder.ExamplePathfinderControl.checkY;
+import static com.babbaj.pathfinder.ExamplePathfinderControl.prefix;
+import static com.babbaj.pathfinder.ExamplePathfinderControl.sendMessage;
+
+/**
+ * {@code ;replan}, searches only the part of a session's path that changed: from the player back onto the path, or from
+ * the end of the path to a new destination. The rest of the path is kept as it is.
+ */
+final class ReplanCommand implements ExamplePathfinderControl.ICommand {
+    private final ExamplePathfinderControl control;
+
+    ReplanCommand(ExamplePathfinderControl control, OptionParser parser) {
+        this.control = control;
+        SearchFlags.acceptReplan(parser);
+    }
+
+    @Override
+    public String description() {
+        return "Keep the current path and only search what changed";
+    }
+
+    @Override
+    public List<String> usage() {
+        return Arrays.asList(
+            "(rejoin the path from where you are)",
+            "<x> <y> <z> (extend the path from its end to a new destination)"
+        );
+    }
+
+    @Override
+    public List<String> optionHelp() {
+        return SearchFlags.replanHelp();
+    }
+
+    @Override
+    public void accept(List<String> args, OptionSet options) {
+        final PathSession session = this.control.sessions.get(ExamplePathfinderControl.sessionName(options));
+        if (session == null || session.activePath.isEmpty()) {
+            throw new IllegalStateException("No path to replan");
+        }
+        if (session.isSearching()) {
+            throw new IllegalStateException("The path is still being searched");
+        }
+        this.control.checkAdmission(session.name);
+        final long deadline = SearchFlags.deadline(options);
+        final ActivePath activePath = session.activePath;
+        final Entity player = Minecraft.getMinecraft().player;
+        final BlockPos pos = new BlockPos((int) player.posX, (int) player.posY, (int) player.posZ);
+        if (args.isEmpty()) {
+            final ActivePath.Location nearest = activePath.nearest(pos.getX(), pos.getY(), pos.getZ());
+            final ActivePath.Location rejoin = activePath.advance(nearest, PathFinderConfig.replanRejoinAheadBlocks);
+            final long target = activePath.pointAt(rejoin);
+            final int version = activePath.getVersion();
+            start(session, Arrays.asList(pos.toLong(), target), deadline, 0, activePath.length() - activePath.lengthBefore(rejoin));
+            // the old start of the path is kept until the new one arrives so a failed replan leaves the path as it was
+            session.pathFinder.beforeFirstSegment = () -> {
+                // a repair may have changed the path since, cut where it is closest to the rejoin point then
+                final ActivePath.Location cut = activePath.getVersion() == version ? rejoin
+                    : activePath.nearest(PackedPos.x(target), PackedPos.y(target), PackedPos.z(target));
+                if (cut != null) activePath.removeBefore(cut);
+            };
+        } else if (args.size() == 3) {
+            final BlockPos end = this.control.parsePosition(args.get(0), args.get(1), args.get(2));
+            checkY(end.getY());
+            final List<Long> points = this.control.routePoints(options, BlockPos.fromLong(activePath.lastPoint()), end);
+            start(session, points, deadline, activePath.partCount(), activePath.length());
+        } else {
+            throw new IllegalArgumentException("Expected 0 or 3 arguments");
+        }
+    }
+
+    // Searches only the stretch between the given points and inserts it into the active path at insertIndex
+    private void start(PathSession session, List<Long> points, long deadline, int insertIndex, double reused) {
+        final long t1 = System.currentTimeMillis();
+        session.pathFinder = this.control.startRoute(session, points, Collections.emptyMap(), session.activePath.getSeed(), session.activePath.isRaytrace(), SegmentSizer.Settings.fromConfig(), deadline, true, insertIndex, route -> {
+            final long t2 = System.currentTimeMillis();
+            final double recomputed = route.getLength();
+            Minecraft.getMinecraft().addScheduledTask(() -> sendMessage(prefix(session) + String.format("Replanned in %.2f seconds: reused %d blocks, recomputed %d blocks", (t2 - t1) / 1000.0, Math.round(reused), Math.round(recomputed))));
+        });
+    }
+}
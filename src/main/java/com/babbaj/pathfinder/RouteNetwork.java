@@ -0,0 +1,430 @@
+package com.babbaj.pathfinder;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Named hubs on one seed and the paths between them (corridors), kept in a directory per seed. Every hub is connected
+ * to its closest few hubs and the corridors are searched in the background, one segment per task so real searches go
+ * first. A long route then only needs the short legs to and from the network searched, the rest is a shortest path
+ * through the corridors. Moving or removing a hub throws away the corridors that end at it, and so does invalidating it.
+ * <p>
+ * The directory holds index.json with the hubs and corridors and one {@link PathFile} per corridor, stored in the
+ * direction from the hub whose name sorts first.
+ */
+public class RouteNetwork {
+    private static final String INDEX_FILE = "index.json";
+    // hubs near the start and the end that the network can be entered and left through
+    private static final int ACCESS_CANDIDATES = 3;
+
+    private final Path directory;
+    private final long seed;
+    private final Map<String, Hub> hubs = new TreeMap<>();
+    private final Map<String, Corridor> corridors = new HashMap<>();
+    // corridors that couldn't be found in this build, they are tried again by the next one
+    private final Set<String> failed = new HashSet<>();
+    private AtomicBoolean building;
+
+    public static final class Hub {
+        public final String name;
+        public final int x, y, z;
+        // changes whenever the hub moves so corridors built to its old position can be told apart
+        public final int generation;
+
+        Hub(String name, int x, int y, int z, int generation) {
+            this.name = name;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.generation = generation;
+        }
+
+        public long pos() {
+            return PackedPos.pack(this.x, this.y, this.z);
+        }
+    }
+
+    private static final class Corridor {
+        final String a, b;
+        final int generationA, generationB;
+        final double length;
+
+        Corridor(String a, String b, int generationA, int generationB, double length) {
+            this.a = a;
+            this.b = b;
+            this.generationA = generationA;
+            this.generationB = generationB;
+            this.length = length;
+        }
+    }
+
+    private static final class Index {
+        List<Hub> hubs = new ArrayList<>();
+        List<Corridor> corridors = new ArrayList<>();
+    }
+
+    // The hubs a route goes through, in order
+    public static final class Plan {
+        public final List<Hub> hubs;
+        // straight lines to and from the network plus the length of the corridors
+        public final double estimate;
+
+        Plan(List<Hub> hubs, double estimate) {
+            this.hubs = hubs;
+            this.estimate = estimate;
+        }
+    }
+
+    private RouteNetwork(Path directory, long seed) {
+        this.directory = directory;
+        this.seed = seed;
+    }
+
+    public static RouteNetwork open(Path root, long seed) {
+        final RouteNetwork network = new RouteNetwork(root.resolve(Long.toString(seed)), seed);
+        final Path index = network.directory.resolve(INDEX_FILE);
+        if (Files.isReadable(index)) {
+            try (Reader reader = Files.newBufferedReader(index, StandardCharsets.UTF_8)) {
+                final Index loaded = new Gson().fromJson(reader, Index.class);
+                if (loaded != null) {
+                    loaded.hubs.forEach(hub -> network.hubs.put(hub.name, hub));
+                    loaded.corridors.forEach(corridor -> network.corridors.put(key(corridor.a, corridor.b), corridor));
+                }
+            } catch (IOException | JsonParseException ex) {
+                ex.printStackTrace();
+            }
+        }
+        return network;
+    }
+
+    public long getSeed() {
+        return this.seed;
+    }
+
+    private static String key(String a, String b) {
+        return a.compareTo(b) < 0 ? a + "+" + b : b + "+" + a;
+    }
+
+    private Path corridorFile(String a, String b) {
+        return this.directory.resolve(key(a, b) + PathFile.EXTENSION);
+    }
+
+    private void save() {
+        final Index index = new Index();
+        index.hubs.addAll(this.hubs.values());
+        index.corridors.addAll(this.corridors.values());
+        try {
+            Files.createDirectories(this.directory);
+            final Path file = this.directory.resolve(INDEX_FILE);
+            final Path tmp = file.resolveSibling(INDEX_FILE + ".tmp");
+            Files.write(tmp, new GsonBuilder().setPrettyPrinting().create().toJson(index).getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    public synchronized List<Hub> getHubs() {
+        return new ArrayList<>(this.hubs.values());
+    }
+
+    public synchronized Hub getHub(String name) {
+        return this.hubs.get(name);
+    }
+
+    // Number of corridors that can be used, corridors to a hub that moved since don't count
+    public synchronized int corridorCount() {
+        return (int) this.corridors.values().stream().filter(this::isValid).count();
+    }
+
+    private boolean isValid(Corridor corridor) {
+        final Hub a = this.hubs.get(corridor.a);
+        final Hub b = this.hubs.get(corridor.b);
+        return a != null && b != null && a.generation == corridor.generationA && b.generation == corridor.generationB;
+    }
+
+    public synchronized void putHub(String name, int x, int y, int z) {
+        final Hub old = this.hubs.get(name);
+        if (old != null && old.x == x && old.y == y && old.z == z) return;
+        this.hubs.put(name, new Hub(name, x, y, z, old != null ? old.generation + 1 : 0));
+        if (old != null) dropCorridors(name);
+        save();
+    }
+
+    public synchronized boolean removeHub(String name) {
+        if (this.hubs.remove(name) == null) return false;
+        dropCorridors(name);
+        save();
+        return true;
+    }
+
+    // Throws away every corridor that ends at the hub so they are searched again, returns how many there were
+    public synchronized int invalidate(String name) {
+        final int dropped = dropCorridors(name);
+        save();
+        return dropped;
+    }
+
+    private int dropCorridors(String name) {
+        int dropped = 0;
+        for (Iterator<Corridor> it = this.corridors.values().iterator(); it.hasNext(); ) {
+            final Corridor corridor = it.next();
+            if (corridor.a.equals(name) || corridor.b.equals(name)) {
+                it.remove();
+                this.failed.remove(key(corridor.a, corridor.b));
+                try {
+                    Files.deleteIfExists(corridorFile(corridor.a, corridor.b));
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
+                dropped++;
+            }
+        }
+        return dropped;
+    }
+
+    private List<Hub> nearestHubs(long pos, int count, Hub except) {
+        final List<Hub> sorted = new ArrayList<>(this.hubs.values());
+        sorted.remove(except);
+        sorted.sort(Comparator.comparingDouble(hub -> ActivePath.distance(pos, hub.pos())));
+        return sorted.subList(0, Math.min(count, sorted.size()));
+    }
+
+    // Pairs of hubs that should have a corridor but don't, closest pairs first
+    public synchronized List<Hub[]> missingCorridors(int neighbors) {
+        final Map<String, Hub[]> missing = new LinkedHashMap<>();
+        for (Hub hub : this.hubs.values()) {
+            for (Hub other : nearestHubs(hub.pos(), neighbors, hub)) {
+                final String key = key(hub.name, other.name);
+                final Corridor corridor = this.corridors.get(key);
+                if ((corridor == null || !isValid(corridor)) && !this.failed.contains(key)) {
+                    missing.put(key, hub.name.compareTo(other.name) < 0 ? new Hub[] {hub, other} : new Hub[] {other, hub});
+                }
+            }
+        }
+        final List<Hub[]> pairs = new ArrayList<>(missing.values());
+        pairs.sort(Comparator.comparingDouble(pair -> ActivePath.distance(pair[0].pos(), pair[1].pos())));
+        return pairs;
+    }
+
+    // Keeps a corridor that was searched between the hubs, unless one of them moved while it was searched
+    private void putCorridor(Hub a, Hub b, List<long[]> segments) throws IOException {
+        synchronized (this) {
+            final Hub currentA = this.hubs.get(a.name);
+            final Hub currentB = this.hubs.get(b.name);
+            if (currentA == null || currentB == null || currentA.generation != a.generation || currentB.generation != b.generation) return;
+        }
+        Files.createDirectories(this.directory);
+        final Path file = corridorFile(a.name, b.name);
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        double length = 0;
+        try (PathFile.Writer writer = new PathFile.Writer(Files.newOutputStream(tmp), this.seed, true)) {
+            for (long[] packed : segments) {
+                writer.writeSegment(packed);
+                length += ActivePath.length(packed);
+            }
+        }
+        synchronized (this) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            this.corridors.put(key(a.name, b.name), new Corridor(a.name, b.name, a.generation, b.generation, length));
+            save();
+        }
+    }
+
+    // The path of the corridor in the direction from one hub to the other
+    public List<long[]> readCorridor(Hub from, Hub to) throws IOException {
+        final List<long[]> segments = new ArrayList<>();
+        try (InputStream in = Files.newInputStream(corridorFile(from.name, to.name)); PathFile.Reader reader = new PathFile.Reader(in)) {
+            long[] packed;
+            while ((packed = reader.nextSegment()) != null) {
+                segments.add(packed);
+            }
+        }
+        if (from.name.compareTo(to.name) > 0) {
+            Collections.reverse(segments);
+            for (long[] packed : segments) {
+                for (int i = 0, j = packed.length - 1; i < j; i++, j--) {
+                    final long tmp = packed[i];
+                    packed[i] = packed[j];
+                    packed[j] = tmp;
+                }
+            }
+        }
+        return segments;
+    }
+
+    // The corridor is broken, it is searched again by the next build
+    public synchronized void dropCorridor(Hub a, Hub b) {
+        this.corridors.remove(key(a.name, b.name));
+        save();
+    }
+
+    private static final class Node {
+        final Hub hub;
+        final double distance;
+
+        Node(Hub hub, double distance) {
+            this.hub = hub;
+            this.distance = distance;
+        }
+    }
+
+    // The shortest way through the network, or null if it would use no corridor or be more than maxDetour longer than the straight line
+    public synchronized Plan plan(long start, long end, double maxDetour) {
+        if (this.hubs.size() < 2) return null;
+        final Map<String, List<Corridor>> edges = new HashMap<>();
+        for (Corridor corridor : this.corridors.values()) {
+            if (!isValid(corridor)) continue;
+            edges.computeIfAbsent(corridor.a, k -> new ArrayList<>()).add(corridor);
+            edges.computeIfAbsent(corridor.b, k -> new ArrayList<>()).add(corridor);
+        }
+        if (edges.isEmpty()) return null;
+
+        // each entry hub is searched on its own, with a shared start a far entry's straight line (which is shorter than
+        // the real path to it) would win over the corridors that lead there
+        final List<Hub> exits = nearestHubs(end, ACCESS_CANDIDATES, null);
+        Plan best = null;
+        for (Hub entry : nearestHubs(start, ACCESS_CANDIDATES, null)) {
+            final Map<String, Double> distance = new HashMap<>();
+            final Map<String, String> previous = new HashMap<>();
+            final PriorityQueue<Node> queue = new PriorityQueue<>(Comparator.comparingDouble(node -> node.distance));
+            distance.put(entry.name, ActivePath.distance(start, entry.pos()));
+            queue.add(new Node(entry, distance.get(entry.name)));
+            while (!queue.isEmpty()) {
+                final Node node = queue.poll();
+                if (node.distance > distance.get(node.hub.name)) continue;
+                for (Corridor corridor : edges.getOrDefault(node.hub.name, Collections.emptyList())) {
+                    final Hub other = this.hubs.get(corridor.a.equals(node.hub.name) ? corridor.b : corridor.a);
+                    final double d = node.distance + corridor.length;
+                    if (d < distance.getOrDefault(other.name, Double.POSITIVE_INFINITY)) {
+                        distance.put(other.name, d);
+                        previous.put(other.name, node.hub.name);
+                        queue.add(new Node(other, d));
+                    }
+                }
+            }
+            for (Hub exit : exits) {
+                // leaving where it was entered wouldn't use the network
+                if (!previous.containsKey(exit.name)) continue;
+                final double d = distance.get(exit.name) + ActivePath.distance(exit.pos(), end);
+                if (best == null || d < best.estimate) {
+                    final LinkedList<Hub> route = new LinkedList<>();
+                    for (String name = exit.name; name != null; name = previous.get(name)) {
+                        route.addFirst(this.hubs.get(name));
+                    }
+                    best = new Plan(route, d);
+                }
+            }
+        }
+        if (best == null || best.estimate > ActivePath.distance(start, end) * (1 + maxDetour)) return null;
+        return best;
+    }
+
+    public synchronized boolean isBuilding() {
+        return this.building != null;
+    }
+
+    public synchronized void stopBuilding() {
+        if (this.building != null) {
+            this.building.set(true);
+            this.building = null;
+        }
+    }
+
+    // Searches the missing corridors one after another in the background, returns false if a build is already running
+    public synchronized boolean build(PathfinderScheduler scheduler, ContextPool pool, int neighbors, Consumer<String> messages) {
+        if (this.building != null) return false;
+        final AtomicBoolean stop = new AtomicBoolean();
+        this.building = stop;
+        this.failed.clear();
+        final int total = missingCorridors(neighbors).size();
+        if (total == 0) {
+            this.building = null;
+            return true;
+        }
+        messages.accept("Searching " + total + " corridors in the background");
+        buildNext(scheduler, pool, neighbors, messages, stop, new int[2], System.nanoTime());
+        return true;
+    }
+
+    // counts holds the corridors that were built and that failed so far
+    private void buildNext(PathfinderScheduler scheduler, ContextPool pool, int neighbors, Consumer<String> messages, AtomicBoolean stop, int[] counts, long started) {
+        final Hub[] pair;
+        synchronized (this) {
+            if (stop.get()) return;
+            // asked again every time so hubs that were changed during the build are picked up
+            final List<Hub[]> missing = missingCorridors(neighbors);
+            if (missing.isEmpty()) {
+                this.building = null;
+                messages.accept(String.format("Network has %d corridors, built %d and failed %d in %.1f seconds",
+                    corridorCount(), counts[0], counts[1], (System.nanoTime() - started) / 1e9));
+                return;
+            }
+            pair = missing.get(0);
+        }
+        step(scheduler, pool, neighbors, messages, stop, counts, started, pair, pair[0].pos(), new ArrayList<>(), System.nanoTime());
+    }
+
+    private void step(PathfinderScheduler scheduler, ContextPool pool, int neighbors, Consumer<String> messages, AtomicBoolean stop, int[] counts, long started,
+                      Hub[] pair, long from, List<long[]> found, long corridorStarted) {
+        final SegmentSizer sizer = new SegmentSizer(SegmentSizer.Settings.fixed(PathFinderConfig.networkSegmentSize));
+        final AtomicBoolean pause = new AtomicBoolean();
+        scheduler.submit(PathfinderScheduler.Priority.BACKGROUND, () -> {
+            if (stop.get()) return PathSearch.Status.CANCELLED;
+            try (ContextPool.Lease lease = pool.acquire(this.seed)) {
+                // the search stops after one segment unless that segment reached the other hub
+                return PathSearch.run(lease, from, pair[1].pos(), true, sizer, pause, packed -> {
+                    found.add(packed);
+                    pause.set(true);
+                    return !stop.get();
+                });
+            }
+        }).whenComplete((status, ex) -> {
+            if (ex != null) {
+                ex.printStackTrace();
+                messages.accept("Stopped searching corridors: " + ex.getMessage());
+                stopBuilding();
+                return;
+            }
+            if (stop.get()) return;
+            if (status == PathSearch.Status.CANCELLED && !found.isEmpty()) {
+                final long[] last = found.get(found.size() - 1);
+                step(scheduler, pool, neighbors, messages, stop, counts, started, pair, last[last.length - 1], found, corridorStarted);
+                return;
+            }
+            if (status == PathSearch.Status.FOUND) {
+                try {
+                    putCorridor(pair[0], pair[1], found);
+                    counts[0]++;
+                    PathfinderMetrics.NETWORK_CORRIDORS_BUILT.incrementAndGet();
+                    PathfinderMetrics.NETWORK_BUILD.record(System.nanoTime() - corridorStarted);
+                } catch (IOException ex2) {
+                    ex2.printStackTrace();
+                    markFailed(pair, counts);
+                }
+            } else {
+                messages.accept("No corridor between " + pair[0].name + " and " + pair[1].name + " (" + status + ")");
+                markFailed(pair, counts);
+            }
+            buildNext(scheduler, pool, neighbors, messages, stop, counts, started);
+        });
+    }
+
+    private synchronized void markFailed(Hub[] pair, int[] counts) {
+        this.failed.add(key(pair[0].name, pair[1].name));
+        counts[1]++;
+    }
+}
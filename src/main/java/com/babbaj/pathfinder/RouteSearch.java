@@ -0,0 +1,272 @@
+package com.babbaj.pathfinder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Searches a route through a list of points with one leg per pair of consecutive points. Legs run at the same time on
+ * their own contexts and their segments are passed on in route order, each leg's segments are held back until every leg
+ * before it has been passed on completely. Held back segments wait in a bounded queue per leg and a leg whose queue is
+ * full waits too, like the search of the current leg waits for the output. Legs that are in the {@link PathCache} are
+ * streamed from there instead, and so are legs whose path the caller already knows. Known paths are read on the leg's
+ * own thread.
+ */
+public class RouteSearch {
+    private final long[] points;
+    private final boolean raytrace;
+    private final SegmentSizer.Settings sizing;
+    private final AtomicBoolean cancelled;
+    private final SegmentQueue<LodSegment> output;
+    private final Leg[] legs;
+    // paths of legs that don't have to be searched, null for the others
+    private final List<Supplier<List<long[]>>> knownLegs = new ArrayList<>();
+    private long deadline = Long.MAX_VALUE;
+    private Consumer<long[]> segmentListener;
+
+    // drain loop guard, only the thread that moves it off zero drains
+    private final AtomicInteger wip = new AtomicInteger();
+    private int currentLeg;
+    private final AtomicInteger warmLegs = new AtomicInteger();
+    // written by the thread of the first leg before it passes anything on
+    private volatile boolean firstLegWarm;
+    private final AtomicInteger cachedLegs = new AtomicInteger();
+    private final DoubleAdder length = new DoubleAdder();
+
+    private static final class Leg {
+        // filled by the thread running the leg and emptied by whichever thread drains
+        final SegmentQueue<LodSegment> segments = SegmentQueue.fromConfig();
+        // everything this leg produced, only used by the thread running the leg
+        final List<long[]> found = new ArrayList<>();
+        // only set for legs that were searched
+        SegmentSizer sizer;
+        // set before done if the leg ran out of time, nothing after it can be passed on
+        volatile boolean truncated;
+        volatile boolean done;
+    }
+
+    public RouteSearch(List<Long> points, boolean raytrace, SegmentSizer.Settings sizing, AtomicBoolean cancelled, SegmentQueue<LodSegment> output) {
+        if (points.size() < 2) throw new IllegalArgumentException("A route needs at least 2 points");
+        this.points = points.stream().mapToLong(Long::longValue).toArray();
+        this.raytrace = raytrace;
+        this.sizing = sizing;
+        this.cancelled = cancelled;
+        this.output = output;
+        this.legs = new Leg[this.points.length - 1];
+        for (int i = 0; i < this.legs.length; i++) {
+            this.legs[i] = new Leg();
+            this.knownLegs.add(null);
+        }
+    }
+
+    // Adds points along the straight line between consecutive points so that no leg is longer than legBlocks
+    public static List<Long> splitStraight(List<Long> points, int legBlocks) {
+        final List<Long> out = new ArrayList<>();
+        out.add(points.get(0));
+        for (int i = 1; i < points.size(); i++) {
+            final long a = points.get(i - 1);
+            final long b = points.get(i);
+            final double dx = PackedPos.x(b) - PackedPos.x(a);
+            final double dy = PackedPos.y(b) - PackedPos.y(a);
+            final double dz = PackedPos.z(b) - PackedPos.z(a);
+            final int pieces = (int) Math.ceil(Math.sqrt(dx * dx + dz * dz) / legBlocks);
+            for (int p = 1; p < pieces; p++) {
+                final double t = p / (double) pieces;
+                out.add(PackedPos.pack(
+                    (int) Math.round(PackedPos.x(a) + dx * t),
+                    (int) Math.round(PackedPos.y(a) + dy * t),
+                    (int) Math.round(PackedPos.z(a) + dz * t)));
+            }
+            out.add(b);
+        }
+        return out;
+    }
+
+    // System.nanoTime() by which every leg has to be done, legs that are still searching then stop with what they have
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    // The leg from points[leg] to points[leg + 1] is passed on as the segments the supplier returns instead of being
+    // searched. The supplier is called on the search thread and can return null to have the leg searched after all
+    public void setKnownLeg(int leg, Supplier<List<long[]>> segments) {
+        this.knownLegs.set(leg, segments);
+    }
+
+    // Called on the search threads with every segment as soon as it is found, before it is put in route order
+    public void setSegmentListener(Consumer<long[]> listener) {
+        this.segmentListener = listener;
+    }
+
+    public int legCount() {
+        return this.legs.length;
+    }
+
+    // Number of legs that got a context that was already warm, valid once the search is done
+    public int getWarmLegs() {
+        return this.warmLegs.get();
+    }
+
+    // Whether the first segment comes from a context that was already warm or from the cache, valid once the first
+    // segment has been passed on
+    public boolean isFirstLegWarm() {
+        return this.firstLegWarm;
+    }
+
+    // Number of legs that were answered from the cache without searching all of it, valid once the search is done
+    public int getCachedLegs() {
+        return this.cachedLegs.get();
+    }
+
+    // Segment sizes picked for every searched leg, in order, as "size:millis" pairs. Valid once the search is done
+    public String describeSegmentSizes() {
+        final StringBuilder sb = new StringBuilder();
+        for (Leg leg : this.legs) {
+            if (leg.sizer == null) continue;
+            for (int i = 0; i < leg.sizer.getDecisions(); i++) {
+                if (sb.length() > 0) sb.append(' ');
+                sb.append(leg.sizer.getSize(i)).append(':').append(TimeUnit.NANOSECONDS.toMillis(leg.sizer.getNanos(i)));
+            }
+        }
+        return sb.toString();
+    }
+
+    // Length in blocks of everything that was found so far
+    public double getLength() {
+        return this.length.sum();
+    }
+
+    public CompletableFuture<PathSearch.Status> start(PathfinderScheduler scheduler, PathfinderScheduler.Priority priority, ContextPool pool, PathCache cache, long seed) {
+        @SuppressWarnings("unchecked")
+        final CompletableFuture<PathSearch.Status>[] futures = new CompletableFuture[this.legs.length];
+        for (int i = 0; i < this.legs.length; i++) {
+            final Leg leg = this.legs[i];
+            final long from = this.points[i];
+            final long to = this.points[i + 1];
+            final PathCache.Key key = new PathCache.Key(seed, from, to, this.raytrace);
+
+            final Supplier<List<long[]>> known = this.knownLegs.get(i);
+            final boolean first = i == 0;
+            // the cache and known legs are read here too, neither should hold up the thread that starts the route
+            futures[i] = scheduler.submit(priority, () -> {
+                try {
+                    List<long[]> path = known != null ? known.get() : null;
+                    if (path == null && cache != null) {
+                        path = cache.get(key);
+                        if (path != null) this.cachedLegs.incrementAndGet();
+                    }
+                    if (path != null) {
+                        if (first) this.firstLegWarm = true;
+                        return stream(leg, path);
+                    }
+
+                    // the start of a route is usually wherever the player is standing so allow it to be a little off
+                    long target = to;
+                    List<long[]> cachedTail = null;
+                    if (first && cache != null) {
+                        final PathCache.Key near = cache.findNearStart(key, PathFinderConfig.pathCacheNearStartBlocks);
+                        cachedTail = near != null ? cache.get(near) : null;
+                        if (cachedTail != null) {
+                            this.cachedLegs.incrementAndGet();
+                            target = near.start;
+                        }
+                    }
+
+                    // creating a context can take a while so it is done on the search thread
+                    try (ContextPool.Lease lease = pool.acquire(seed)) {
+                        if (lease.isWarm()) this.warmLegs.incrementAndGet();
+                        if (first) this.firstLegWarm = lease.isWarm();
+                        leg.sizer = new SegmentSizer(this.sizing);
+                        leg.sizer.setDeadline(this.deadline);
+                        PathSearch.Status status = PathSearch.Status.FOUND;
+                        if (target != from) {
+                            status = PathSearch.run(lease, from, target, this.raytrace, leg.sizer, this.cancelled, packed -> emit(leg, packed));
+                        }
+                        if (status == PathSearch.Status.FOUND && cachedTail != null) {
+                            status = stream(leg, cachedTail);
+                        }
+                        if (status == PathSearch.Status.TIMED_OUT) {
+                            leg.truncated = true;
+                        }
+                        if (status == PathSearch.Status.FOUND && cache != null) {
+                            try {
+                                cache.put(key, leg.found);
+                            } catch (IOException ex) {
+                                ex.printStackTrace();
+                            }
+                        }
+                        return status;
+                    }
+                } finally {
+                    leg.done = true;
+                    drain();
+                }
+            });
+        }
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = futures[i].whenComplete((status, ex) -> {
+                // legs that time out stop on their own, every leg has the same deadline
+                if (ex != null || (status != PathSearch.Status.FOUND && status != PathSearch.Status.TIMED_OUT)) {
+                    // the route can't be completed without this leg
+                    this.cancelled.set(true);
+                }
+            });
+        }
+        return CompletableFuture.allOf(futures).thenApply(ignored -> {
+            PathSearch.Status result = PathSearch.Status.FOUND;
+            for (CompletableFuture<PathSearch.Status> future : futures) {
+                final PathSearch.Status status = future.join();
+                if (status == PathSearch.Status.NO_PATH) return status;
+                if (status == PathSearch.Status.CANCELLED) result = status;
+                if (status == PathSearch.Status.TIMED_OUT && result == PathSearch.Status.FOUND) result = status;
+            }
+            return result;
+        });
+    }
+
+    private PathSearch.Status stream(Leg leg, List<long[]> segments) {
+        for (long[] packed : segments) {
+            if (!emit(leg, packed)) return PathSearch.Status.CANCELLED;
+        }
+        return PathSearch.Status.FOUND;
+    }
+
+    private boolean emit(Leg leg, long[] packed) {
+        leg.found.add(packed);
+        if (this.segmentListener != null) this.segmentListener.accept(packed);
+        this.length.add(ActivePath.length(packed));
+        // drained once the legs before this one are done
+        if (!leg.segments.put(LodSegment.build(packed), this.cancelled)) return false;
+        drain();
+        return !this.cancelled.get();
+    }
+
+    private void drain() {
+        if (this.wip.getAndIncrement() != 0) return;
+        int missed = 1;
+        do {
+            while (this.currentLeg < this.legs.length) {
+                final Leg leg = this.legs[this.currentLeg];
+                // read before polling so nothing added before the leg finished can be missed
+                final boolean done = leg.done;
+                LodSegment segment;
+                while ((segment = leg.segments.poll()) != null) {
+                    if (!this.output.put(segment, this.cancelled)) {
+                        return;
+                    }
+                }
+                if (!done) break;
+                // the rest of the route would not connect to what was passed on so far
+                this.currentLeg = leg.truncated ? this.legs.length : this.currentLeg + 1;
+            }
+            missed = this.wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+}
@@ -0,0 +1,103 @@
+package com.babbaj.pathfinder;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The options every command that starts a search accepts, their help and how they are read. Commands that search a
+ * route between points accept a few more on top of them, and {@code ;replan} only takes the ones that shape the route.
+ */
+final class SearchFlags {
+    private SearchFlags() {}
+
+    private static final String TIMEOUT_HELP = "--timeout <seconds>  stop searching after this long and keep what was found, 0 never stops";
+    private static final String VIA_HELP = "--via <x,y,z>  go through this point first, can be repeated";
+    private static final String AUTOSPLIT_HELP = "--autosplit [blocks]  split long routes into legs that are searched in parallel";
+
+    static void accept(OptionParser parser) {
+        parser.accepts("seed").withRequiredArg();
+        parser.accepts("noraytrace");
+        parser.accepts("segment").withRequiredArg();
+        parser.accepts("segmenttime").withRequiredArg();
+        parser.accepts("session").withRequiredArg();
+        parser.accepts("timeout").withRequiredArg();
+    }
+
+    static void acceptRoute(OptionParser parser) {
+        accept(parser);
+        acceptLegs(parser);
+        parser.accepts("network");
+        parser.accepts("progressive");
+    }
+
+    // ;replan searches with the seed and settings of the path it changes so it only takes the options of the route
+    static void acceptReplan(OptionParser parser) {
+        acceptLegs(parser);
+        parser.accepts("session").withRequiredArg();
+        parser.accepts("timeout").withRequiredArg();
+    }
+
+    private static void acceptLegs(OptionParser parser) {
+        parser.accepts("via").withRequiredArg();
+        parser.accepts("autosplit").withOptionalArg();
+    }
+
+    static List<String> help() {
+        return Arrays.asList(
+            "--seed <seed>",
+            "--noraytrace  do not simplify the result of the pathfinder",
+            "--segment <size>  use this segment size instead of adapting it",
+            "--segmenttime <ms>  adapt the segment size so each segment takes about this long",
+            "--session <name>  search in this session, paths in other sessions are kept",
+            TIMEOUT_HELP
+        );
+    }
+
+    static List<String> routeHelp() {
+        final List<String> help = new ArrayList<>(help());
+        help.addAll(Arrays.asList(
+            VIA_HELP,
+            AUTOSPLIT_HELP,
+            "--network  go through the corridors between the hubs of ;hub where that is shorter",
+            "--progressive  show the path before it is simplified and simplify it in the background"
+        ));
+        return help;
+    }
+
+    static List<String> replanHelp() {
+        return Arrays.asList(
+            VIA_HELP,
+            AUTOSPLIT_HELP,
+            "--session <name>  replan the path of this session",
+            TIMEOUT_HELP
+        );
+    }
+
+    static SegmentSizer.Settings segmentSizing(OptionSet options) {
+        if (options.has("segment")) {
+            final int size = Integer.parseInt((String) options.valueOf("segment"));
+            if (size <= 0) throw new IllegalArgumentException("Segment size must be positive");
+            return SegmentSizer.Settings.fixed(size);
+        }
+        if (options.has("segmenttime")) {
+            final int millis = Integer.parseInt((String) options.valueOf("segmenttime"));
+            if (millis <= 0) throw new IllegalArgumentException("Segment time must be positive");
+            return SegmentSizer.Settings.adaptive(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+        return SegmentSizer.Settings.fromConfig();
+    }
+
+    // System.nanoTime() by which the search has to be done
+    static long deadline(OptionSet options) {
+        final double seconds = options.has("timeout")
+            ? Double.parseDouble((String) options.valueOf("timeout"))
+            : PathFinderConfig.searchTimeoutSeconds;
+        if (seconds < 0) throw new IllegalArgumentException("Timeout can not be negative");
+        return seconds == 0 ? Long.MAX_VALUE : System.nanoTime() + (long) (seconds * 1e9);
+    }
+}
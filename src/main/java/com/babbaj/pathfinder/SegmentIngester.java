@@ -0,0 +1,100 @@
+package com.babbaj.pathfinder;
+
+import java.util.function.Consumer;
+
+/**
+ * Moves finished segments from a {@link SegmentQueue} to the renderer on the client thread. Each tick it uploads as many
+ * segments as fit in its time budget and leaves the rest in the queue for the next tick. Runs of small segments are
+ * merged so they are uploaded together.
+ */
+public class SegmentIngester {
+    private final long budgetNanos;
+    private final int mergeVertices;
+
+    private final Timing ingestLatency = PathfinderMetrics.INGEST_LATENCY;
+    private final Timing tickTime = PathfinderMetrics.INGEST_TICK;
+    private int backlog;
+    private int maxBacklog;
+
+    public SegmentIngester(long budgetNanos, int mergeVertices) {
+        this.budgetNanos = budgetNanos;
+        this.mergeVertices = mergeVertices;
+    }
+
+    public static SegmentIngester fromConfig() {
+        return new SegmentIngester(PathFinderConfig.ingestBudgetNanos, PathFinderConfig.ingestMergeVertices);
+    }
+
+    // Returns the number of segments that were taken from the queue
+    public int ingest(SegmentQueue<LodSegment> queue, Consumer<LodSegment> upload) {
+        return ingest(queue, upload, System.nanoTime());
+    }
+
+    // Same as above but the budget started at startNanos, so several queues can share one tick's budget
+    public int ingest(SegmentQueue<LodSegment> queue, Consumer<LodSegment> upload, long startNanos) {
+        final long start = System.nanoTime();
+        PathfinderMetrics.QUEUE_DEPTH.record(queue.size());
+        int taken = 0;
+        LodSegment segment;
+        // always make progress even if a single upload is over budget
+        while ((segment = queue.peek()) != null) {
+            final long enqueuedAt = queue.peekEnqueuedAt();
+            queue.poll();
+            taken++;
+            if (segment.full().length < this.mergeVertices) {
+                final int mergeable = countMergeable(segment, queue);
+                if (mergeable > 0) {
+                    final LodSegment[] parts = new LodSegment[mergeable + 1];
+                    parts[0] = segment;
+                    for (int i = 1; i <= mergeable; i++) {
+                        parts[i] = queue.poll();
+                    }
+                    segment = LodSegment.concat(parts);
+                    taken += mergeable;
+                }
+            }
+            upload.accept(segment);
+            final long now = System.nanoTime();
+            this.ingestLatency.record(now - enqueuedAt);
+            if (now - startNanos >= this.budgetNanos) {
+                break;
+            }
+        }
+        if (taken > 0) {
+            this.tickTime.record(System.nanoTime() - start);
+        }
+        this.backlog = queue.size();
+        this.maxBacklog = Math.max(this.maxBacklog, this.backlog);
+        return taken;
+    }
+
+    // Number of segments at the front of the queue that can be appended to this one without going over the merge size
+    private int countMergeable(LodSegment first, SegmentQueue<LodSegment> queue) {
+        int length = first.full().length;
+        int count = 0;
+        LodSegment next;
+        while ((next = queue.peek(count)) != null) {
+            length += next.full().length - 1;
+            if (length > this.mergeVertices) break;
+            count++;
+        }
+        return count;
+    }
+
+    public Timing getIngestLatency() {
+        return this.ingestLatency;
+    }
+
+    public Timing getTickTime() {
+        return this.tickTime;
+    }
+
+    // Segments that were left in the queue after the last tick
+    public int getBacklog() {
+        return this.backlog;
+    }
+
+    public int getMaxBacklog() {
+        return this.maxBacklog;
+    }
+}
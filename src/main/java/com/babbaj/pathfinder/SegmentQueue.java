@@ -0,0 +1,101 @@
+package com.babbaj.pathfinder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded single producer/single consumer handoff of path segments from a search thread to the client thread.
+ * When the queue is full the producer waits for the consumer to catch up instead of buffering without limit.
+ */
+public class SegmentQueue<T> {
+    private static final long PRODUCER_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Object[] ring;
+    // System.nanoTime() of when each slot was filled
+    private final long[] enqueuedAt;
+    private final int mask;
+    // next slot to read, only written by the consumer
+    private final AtomicLong head = new AtomicLong();
+    // next slot to write, only written by the producer
+    private final AtomicLong tail = new AtomicLong();
+
+    public SegmentQueue(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+        int size = 1;
+        while (size < capacity) size <<= 1;
+        this.ring = new Object[size];
+        this.enqueuedAt = new long[size];
+        this.mask = size - 1;
+    }
+
+    public static <T> SegmentQueue<T> fromConfig() {
+        return new SegmentQueue<>(PathFinderConfig.segmentQueueCapacity);
+    }
+
+    public int capacity() {
+        return this.ring.length;
+    }
+
+    // Returns false without blocking if the queue is full
+    public boolean offer(T segment) {
+        final long t = this.tail.get();
+        if (t - this.head.get() >= this.ring.length) {
+            return false;
+        }
+        final int index = (int) t & this.mask;
+        this.ring[index] = segment;
+        this.enqueuedAt[index] = System.nanoTime();
+        this.tail.lazySet(t + 1);
+        return true;
+    }
+
+    // Waits until there is space for the segment, returns false if the search was cancelled while waiting
+    public boolean put(T segment, AtomicBoolean cancelled) {
+        while (!offer(segment)) {
+            if (cancelled.get()) {
+                return false;
+            }
+            LockSupport.parkNanos(PRODUCER_PARK_NANOS);
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        final long h = this.head.get();
+        if (h == this.tail.get()) {
+            return null;
+        }
+        final int index = (int) h & this.mask;
+        final T segment = (T) this.ring[index];
+        this.ring[index] = null;
+        this.head.lazySet(h + 1);
+        return segment;
+    }
+
+    public T peek() {
+        return peek(0);
+    }
+
+    // Looks at the segment that is offset places behind the head, or null if there are not that many
+    @SuppressWarnings("unchecked")
+    public T peek(int offset) {
+        final long h = this.head.get() + offset;
+        return h >= this.tail.get() ? null : (T) this.ring[(int) h & this.mask];
+    }
+
+    // When the segment returned by peek was added, only valid while the queue is not empty
+    public long peekEnqueuedAt() {
+        return this.enqueuedAt[(int) this.head.get() & this.mask];
+    }
+
+    public int size() {
+        return (int) (this.tail.get() - this.head.get());
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+}
@@ -0,0 +1,115 @@
+package com.babbaj.pathfinder;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks the size passed to the native pathfinder for each segment of a search. It starts small so the first segment shows
+ * up quickly, grows while segments finish well within the target time and shrinks when they take longer or when the
+ * search has a deadline that the next segment would run past. A search can only be stopped between segments so the
+ * target time is also how long a cancel can take.
+ */
+public class SegmentSizer {
+    private final Settings settings;
+    private int size;
+    private long deadline = Long.MAX_VALUE;
+    private long lastNanos;
+    private int lastSize;
+
+    // sizes that were used and how long each segment took
+    private int decisions;
+    private int[] sizes = new int[16];
+    private long[] nanos = new long[16];
+
+    public static final class Settings {
+        public final int initial;
+        public final int min;
+        public final int max;
+        public final long targetNanos;
+        public final boolean adaptive;
+
+        public Settings(int initial, int min, int max, long targetNanos, boolean adaptive) {
+            this.initial = initial;
+            this.min = min;
+            this.max = max;
+            this.targetNanos = targetNanos;
+            this.adaptive = adaptive;
+        }
+
+        public static Settings fromConfig() {
+            return adaptive(TimeUnit.MILLISECONDS.toNanos(PathFinderConfig.segmentTargetMillis));
+        }
+
+        public static Settings adaptive(long targetNanos) {
+            return new Settings(PathFinderConfig.segmentSizeInitial, PathFinderConfig.segmentSizeMin, PathFinderConfig.segmentSizeMax, targetNanos, true);
+        }
+
+        public static Settings fixed(int size) {
+            return new Settings(size, size, size, Long.MAX_VALUE, false);
+        }
+    }
+
+    public SegmentSizer(Settings settings) {
+        this.settings = settings;
+        this.size = settings.initial;
+    }
+
+    // System.nanoTime() by which the search should be done
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    // True once the deadline has passed, searches check this between segments
+    public boolean isExpired() {
+        return this.deadline != Long.MAX_VALUE && System.nanoTime() - this.deadline >= 0;
+    }
+
+    public int next() {
+        if (!this.settings.adaptive) return this.size;
+        if (this.deadline != Long.MAX_VALUE && this.lastSize > 0) {
+            final long remaining = this.deadline - System.nanoTime();
+            // assume time scales with the size of the segment
+            final double expected = this.lastNanos * (this.size / (double) this.lastSize);
+            if (expected > remaining) {
+                this.size = clamp((long) (this.size * Math.max(0, remaining) / expected));
+            }
+        }
+        return this.size;
+    }
+
+    public void record(int size, long nanos) {
+        if (this.decisions == this.sizes.length) {
+            this.sizes = Arrays.copyOf(this.sizes, this.decisions * 2);
+            this.nanos = Arrays.copyOf(this.nanos, this.decisions * 2);
+        }
+        this.sizes[this.decisions] = size;
+        this.nanos[this.decisions] = nanos;
+        this.decisions++;
+        this.lastSize = size;
+        this.lastNanos = nanos;
+        if (!this.settings.adaptive) return;
+
+        final long target = this.settings.targetNanos;
+        if (nanos < target / 2) {
+            this.size = clamp((long) size * 2);
+        } else if (nanos > target) {
+            this.size = clamp((long) (size * (target / (double) nanos)));
+        }
+    }
+
+    private int clamp(long size) {
+        return (int) Math.max(this.settings.min, Math.min(this.settings.max, size));
+    }
+
+    public int getDecisions() {
+        return this.decisions;
+    }
+
+    public int getSize(int decision) {
+        return this.sizes[decision];
+    }
+
+    public long getNanos(int decision) {
+        return this.nanos[decision];
+    }
+}
@@ -0,0 +1,62 @@
+package com.babbaj.pathfinder;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import net.minecraft.client.Minecraft;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.babbaj.pathfinder.ExamplePathfinderControl.rootCause;
+import static com.babbaj.pathfinder.ExamplePathfinderControl.sendMessage;
+
+/**
+ * {@code ;stats}, prints the {@link PathfinderMetrics} in chat and can write them to the export files right away. The files
+ * are written on the metrics export thread.
+ */
+final class StatsCommand implements ExamplePathfinderControl.ICommand {
+    StatsCommand(OptionParser parser) {
+        parser.accepts("export");
+    }
+
+    @Override
+    public String description() {
+        return "Show pathfinder timings and counters";
+    }
+
+    @Override
+    public List<String> usage() {
+        return Arrays.asList(
+            "(show everything)",
+            "<prefix> (only show metrics whose name starts with this, e.g. search)"
+        );
+    }
+
+    @Override
+    public List<String> optionHelp() {
+        return Collections.singletonList("--export  also write them to " + PathFinderMod.METRICS_CSV_PATH + " and " + PathFinderMod.METRICS_JSON_PATH);
+    }
+
+    @Override
+    public void accept(List<String> args, OptionSet options) {
+        if (args.size() > 1) throw new IllegalArgumentException("Expected 0 or 1 arguments");
+        final String prefix = args.isEmpty() ? "" : args.get(0);
+        for (PathfinderMetrics.Row row : PathfinderMetrics.snapshot()) {
+            if (row.name.startsWith(prefix)) {
+                sendMessage(row.toString());
+            }
+        }
+        if (options.has("export")) {
+            PathfinderMetrics.exportNow(PathFinderMod.METRICS_CSV_PATH, PathFinderMod.METRICS_JSON_PATH)
+                .whenComplete((ignored, ex) -> Minecraft.getMinecraft().addScheduledTask(() -> {
+                    if (ex != null) {
+                        ex.printStackTrace();
+                        sendMessage("Failed to write the metrics: " + rootCause(ex));
+                        return;
+                    }
+                    sendMessage("Wrote " + PathFinderMod.METRICS_CSV_PATH + " and " + PathFinderMod.METRICS_JSON_PATH);
+                }));
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.babbaj.pathfinder;
+
+// A histogram of durations recorded in nanoseconds and shown in milliseconds
+public final class Timing extends Histogram {
+
+    public double getMeanMillis() {
+        return getMean() / 1e6;
+    }
+
+    public double getMaxMillis() {
+        return getMax() / 1e6;
+    }
+
+    @Override
+    public double scale(long nanos) {
+        return nanos / 1e6;
+    }
+
+    @Override
+    public String unit() {
+        return "ms";
+    }
+}
@@ -0,0 +1,215 @@
+package com.babbaj.pathfinder;
+
+import com.google.common.io.CountingInputStream;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only log of path requests and the segments they produced. The file starts with a magic and version, after
+ * that every record is a type byte followed by varints. A session record starts every run of the game and holds the
+ * wall clock time, requests are timed in microseconds since their session started and segments and ends in microseconds
+ * since their request started. Request ids are only unique within a session. A record cut off by a crash is removed
+ * the next time the file is opened for writing so the sessions after it can still be read.
+ */
+public final class TraceFile {
+    private static final int MAGIC = 0x4e505452; // NPTR
+    private static final int VERSION = 1;
+    // magic and version
+    private static final int HEADER_BYTES = 5;
+
+    private static final int SESSION = 0;
+    private static final int REQUEST = 1;
+    private static final int SEGMENT = 2;
+    private static final int END = 3;
+
+    private static final int FLAG_RAYTRACE = 1;
+    private static final int FLAG_ADAPTIVE = 2;
+
+    private TraceFile() {}
+
+    public static final class Request {
+        public final long sessionMillis;
+        public final long startMicros;
+        public final long seed;
+        public final long[] points;
+        public final boolean raytrace;
+        public final SegmentSizer.Settings sizing;
+        // 0 if the request had no timeout
+        public final long timeoutNanos;
+        // microseconds since the request started and number of points of every segment, in the order they were found
+        public final List<long[]> segments = new ArrayList<>();
+        // null if the trace ends before the request did
+        public PathSearch.Status status;
+        public long endMicros;
+        public int cachedLegs;
+        public int warmLegs;
+
+        Request(long sessionMillis, long startMicros, long seed, long[] points, boolean raytrace, SegmentSizer.Settings sizing, long timeoutNanos) {
+            this.sessionMillis = sessionMillis;
+            this.startMicros = startMicros;
+            this.seed = seed;
+            this.points = points;
+            this.raytrace = raytrace;
+            this.sizing = sizing;
+            this.timeoutNanos = timeoutNanos;
+        }
+
+        // Wall clock time of the request in microseconds
+        public long wallMicros() {
+            return this.sessionMillis * 1000 + this.startMicros;
+        }
+
+        public long firstSegmentMicros() {
+            return this.segments.isEmpty() ? -1 : this.segments.get(0)[0];
+        }
+    }
+
+    public static final class Writer implements Closeable {
+        private final DataOutputStream out;
+
+        // Appends to the file, the header is only written if it is new
+        public Writer(File file, long sessionMillis) throws IOException {
+            final long complete = completeLength(file);
+            if (complete < file.length()) {
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    raf.setLength(complete);
+                }
+            }
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+            if (complete == 0) {
+                this.out.writeInt(MAGIC);
+                this.out.writeByte(VERSION);
+            }
+            this.out.writeByte(SESSION);
+            this.out.writeLong(sessionMillis);
+        }
+
+        public void request(int id, long startMicros, long seed, long[] points, boolean raytrace, SegmentSizer.Settings sizing, long timeoutNanos) throws IOException {
+            this.out.writeByte(REQUEST);
+            PathFile.writeVarLong(this.out, id);
+            PathFile.writeVarLong(this.out, startMicros);
+            this.out.writeLong(seed);
+            this.out.writeByte((raytrace ? FLAG_RAYTRACE : 0) | (sizing.adaptive ? FLAG_ADAPTIVE : 0));
+            PathFile.writeVarLong(this.out, sizing.initial);
+            PathFile.writeVarLong(this.out, sizing.min);
+            PathFile.writeVarLong(this.out, sizing.max);
+            PathFile.writeVarLong(this.out, sizing.targetNanos);
+            PathFile.writeVarLong(this.out, timeoutNanos);
+            PathFile.writeVarLong(this.out, points.length);
+            for (long pos : points) {
+                this.out.writeLong(pos);
+            }
+        }
+
+        public void segment(int id, long micros, int points) throws IOException {
+            this.out.writeByte(SEGMENT);
+            PathFile.writeVarLong(this.out, id);
+            PathFile.writeVarLong(this.out, micros);
+            PathFile.writeVarLong(this.out, points);
+        }
+
+        public void end(int id, long micros, PathSearch.Status status, int cachedLegs, int warmLegs) throws IOException {
+            this.out.writeByte(END);
+            PathFile.writeVarLong(this.out, id);
+            PathFile.writeVarLong(this.out, micros);
+            this.out.writeByte(status.ordinal());
+            PathFile.writeVarLong(this.out, cachedLegs);
+            PathFile.writeVarLong(this.out, warmLegs);
+        }
+
+        public void flush() throws IOException {
+            this.out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.out.close();
+        }
+    }
+
+    // Every request in the file in the order they were made. A record cut off by a crash ends the trace instead of failing
+    public static List<Request> read(InputStream stream) throws IOException {
+        final List<Request> requests = new ArrayList<>();
+        parse(stream, requests);
+        return requests;
+    }
+
+    // Bytes from the start of the file to the end of its last complete record, 0 if not even the header is complete
+    static long completeLength(File file) throws IOException {
+        if (file.length() < HEADER_BYTES) return 0;
+        try (InputStream in = new FileInputStream(file)) {
+            return parse(in, new ArrayList<>());
+        }
+    }
+
+    // Adds the requests of every complete record to requests and returns where the last one ends
+    private static long parse(InputStream stream, List<Request> requests) throws IOException {
+        final CountingInputStream counting = new CountingInputStream(new BufferedInputStream(stream));
+        final DataInputStream in = new DataInputStream(counting);
+        if (in.readInt() != MAGIC) throw new IOException("Not a trace file");
+        final int version = in.readUnsignedByte();
+        if (version != VERSION) throw new IOException("Unsupported trace file version " + version);
+        final Map<Integer, Request> open = new HashMap<>();
+        long sessionMillis = 0;
+        long complete = counting.getCount();
+        try {
+            int type;
+            while ((type = in.read()) != -1) {
+                switch (type) {
+                    case SESSION:
+                        sessionMillis = in.readLong();
+                        open.clear();
+                        break;
+                    case REQUEST: {
+                        final int id = (int) PathFile.readVarLong(in);
+                        final long startMicros = PathFile.readVarLong(in);
+                        final long seed = in.readLong();
+                        final int flags = in.readUnsignedByte();
+                        final SegmentSizer.Settings sizing = new SegmentSizer.Settings((int) PathFile.readVarLong(in), (int) PathFile.readVarLong(in),
+                            (int) PathFile.readVarLong(in), PathFile.readVarLong(in), (flags & FLAG_ADAPTIVE) != 0);
+                        final long timeoutNanos = PathFile.readVarLong(in);
+                        final long[] points = new long[(int) PathFile.readVarLong(in)];
+                        for (int i = 0; i < points.length; i++) {
+                            points[i] = in.readLong();
+                        }
+                        final Request request = new Request(sessionMillis, startMicros, seed, points, (flags & FLAG_RAYTRACE) != 0, sizing, timeoutNanos);
+                        requests.add(request);
+                        open.put(id, request);
+                        break;
+                    }
+                    case SEGMENT: {
+                        final Request request = open.get((int) PathFile.readVarLong(in));
+                        final long micros = PathFile.readVarLong(in);
+                        final long points = PathFile.readVarLong(in);
+                        if (request != null) request.segments.add(new long[] {micros, points});
+                        break;
+                    }
+                    case END: {
+                        final Request request = open.remove((int) PathFile.readVarLong(in));
+                        final long micros = PathFile.readVarLong(in);
+                        final PathSearch.Status status = PathSearch.Status.values()[in.readUnsignedByte()];
+                        final int cachedLegs = (int) PathFile.readVarLong(in);
+                        final int warmLegs = (int) PathFile.readVarLong(in);
+                        if (request != null) {
+                            request.endMicros = micros;
+                            request.status = status;
+                            request.cachedLegs = cachedLegs;
+                            request.warmLegs = warmLegs;
+                        }
+                        break;
+                    }
+                    default:
+                        throw new IOException("Unknown trace record " + type);
+                }
+                complete = counting.getCount();
+            }
+        } catch (EOFException ex) {
+            // the game was closed while a record was written
+        }
+        return complete;
+    }
+}
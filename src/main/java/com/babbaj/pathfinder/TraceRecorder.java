@@ -0,0 +1,76 @@
+package com.babbaj.pathfinder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes every path request and the segments it produced to a {@link TraceFile} while {@code traceRequests} is on, so
+ * slow searches can be replayed later with {@link TraceReplay}. The file is opened on the first request and an error
+ * writing it turns recording off until the game is restarted.
+ */
+public class TraceRecorder {
+    private final Path file;
+    private TraceFile.Writer writer;
+    private long sessionNanos;
+    private boolean failed;
+    private int nextId;
+    // System.nanoTime() of when every request that hasn't ended yet started
+    private final Map<Integer, Long> started = new HashMap<>();
+
+    public TraceRecorder(Path file) {
+        this.file = file;
+    }
+
+    // Returns the id to pass to the other methods, or -1 if nothing is recorded
+    public synchronized int request(long seed, List<Long> points, boolean raytrace, SegmentSizer.Settings sizing, long deadline) {
+        if (!PathFinderConfig.traceRequests || this.failed) return -1;
+        final long now = System.nanoTime();
+        try {
+            if (this.writer == null) {
+                this.writer = new TraceFile.Writer(this.file.toFile(), System.currentTimeMillis());
+                this.sessionNanos = now;
+            }
+            final int id = this.nextId++;
+            final long timeout = deadline == Long.MAX_VALUE ? 0 : Math.max(0, deadline - now);
+            this.writer.request(id, (now - this.sessionNanos) / 1000, seed, points.stream().mapToLong(Long::longValue).toArray(), raytrace, sizing, timeout);
+            this.started.put(id, now);
+            return id;
+        } catch (IOException ex) {
+            fail(ex);
+            return -1;
+        }
+    }
+
+    public synchronized void segment(int id, int points) {
+        final Long start = this.started.get(id);
+        if (start == null || this.failed) return;
+        try {
+            this.writer.segment(id, (System.nanoTime() - start) / 1000, points);
+        } catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    public synchronized void end(int id, PathSearch.Status status, int cachedLegs, int warmLegs) {
+        final Long start = this.started.remove(id);
+        if (start == null || this.failed) return;
+        try {
+            this.writer.end(id, (System.nanoTime() - start) / 1000, status, cachedLegs, warmLegs);
+            // a request is only useful with its end so don't let it sit in the buffer
+            this.writer.flush();
+        } catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    private void fail(IOException ex) {
+        ex.printStackTrace();
+        this.failed = true;
+        try {
+            if (this.writer != null) this.writer.close();
+        } catch (IOException ignored) {}
+    }
+}
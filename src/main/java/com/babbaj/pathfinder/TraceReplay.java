@@ -0,0 +1,166 @@
+package com.babbaj.pathfinder;
+
+import dev.babbaj.pathfinder.NetherPathfinder;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the requests of a {@link TraceFile} again without starting Minecraft and compares how long they take now with how
+ * long they took when they were recorded. At the original speed requests start with the same gaps between them as in the
+ * trace (long gaps are shortened), so requests that overlapped in the game overlap again. At maximum speed every request
+ * starts as soon as the one before it is done. The path cache isn't used, a request that was answered from the cache is
+ * marked as such.
+ */
+public final class TraceReplay {
+    private TraceReplay() {}
+
+    private static final class Replay {
+        final int index;
+        final TraceFile.Request request;
+        final SegmentQueue<LodSegment> queue = SegmentQueue.fromConfig();
+        final AtomicInteger segments = new AtomicInteger();
+        CompletableFuture<PathSearch.Status> future;
+        long startNanos;
+        volatile long firstSegmentNanos = -1;
+
+        Replay(int index, TraceFile.Request request) {
+            this.index = index;
+            this.request = request;
+        }
+    }
+
+    private static void start(Replay replay, PathfinderScheduler scheduler, ContextPool pool) {
+        final TraceFile.Request request = replay.request;
+        final List<Long> points = new ArrayList<>();
+        for (long pos : request.points) points.add(pos);
+        final RouteSearch route = new RouteSearch(points, request.raytrace, request.sizing, new AtomicBoolean(), replay.queue);
+        replay.startNanos = System.nanoTime();
+        if (request.timeoutNanos > 0) {
+            route.setDeadline(replay.startNanos + request.timeoutNanos);
+        }
+        route.setSegmentListener(packed -> {
+            if (replay.segments.getAndIncrement() == 0) {
+                replay.firstSegmentNanos = System.nanoTime() - replay.startNanos;
+            }
+        });
+        replay.future = route.start(scheduler, PathfinderScheduler.Priority.INTERACTIVE, pool, null, request.seed)
+            .exceptionally(ex -> {
+                ex.printStackTrace();
+                return PathSearch.Status.FAILED;
+            });
+    }
+
+    private static String describe(long[] points) {
+        final StringBuilder sb = new StringBuilder();
+        for (long pos : points) {
+            if (sb.length() > 0) sb.append(" -> ");
+            sb.append(PackedPos.x(pos)).append(',').append(PackedPos.y(pos)).append(',').append(PackedPos.z(pos));
+        }
+        return sb.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        final OptionParser parser = new OptionParser();
+        parser.accepts("max");
+        parser.accepts("maxgap").withRequiredArg();
+        parser.accepts("workers").withRequiredArg();
+        parser.accepts("request").withRequiredArg();
+        parser.accepts("slower").withRequiredArg();
+        final OptionSet options = parser.parse(args);
+        final List<?> files = options.nonOptionArguments();
+        if (files.size() != 1) {
+            System.err.println("Usage: TraceReplay <trace file> [--max] [--maxgap <seconds>] [--workers <n>] [--request <index>] [--slower <fraction>]");
+            System.exit(2);
+        }
+        if (!NetherPathfinder.isThisSystemSupported()) {
+            System.err.println("Nether pathfinder is not supported on this system");
+            System.exit(1);
+        }
+        final List<TraceFile.Request> requests;
+        try (InputStream in = Files.newInputStream(Paths.get(files.get(0).toString()))) {
+            requests = TraceFile.read(in);
+        }
+        final boolean max = options.has("max");
+        final long maxGapMicros = (long) ((options.has("maxgap") ? Double.parseDouble((String) options.valueOf("maxgap")) : 10) * 1e6);
+        final double slower = options.has("slower") ? Double.parseDouble((String) options.valueOf("slower")) : 0.25;
+        final int workers = options.has("workers")
+            ? Integer.parseInt((String) options.valueOf("workers"))
+            : PathfinderScheduler.fromConfig().getWorkers();
+
+        final List<Replay> replays = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            if (options.has("request") && i != Integer.parseInt((String) options.valueOf("request"))) continue;
+            replays.add(new Replay(i, requests.get(i)));
+        }
+        if (replays.isEmpty()) {
+            System.out.println("No requests to replay");
+            return;
+        }
+        // when each replay starts, in microseconds since the first one
+        final long[] due = new long[replays.size()];
+        for (int i = 1; i < due.length; i++) {
+            final long gap = replays.get(i).request.wallMicros() - replays.get(i - 1).request.wallMicros();
+            due[i] = due[i - 1] + Math.max(0, Math.min(gap, maxGapMicros));
+        }
+
+        final PathfinderScheduler scheduler = new PathfinderScheduler(workers, Math.max(1, replays.size()));
+        final ContextPool pool = ContextPool.fromConfig();
+        final List<Replay> running = new ArrayList<>();
+        int next = 0;
+        int slowerCount = 0;
+        long originalMicros = 0;
+        long replayMicros = 0;
+        final long t0 = System.nanoTime();
+        try {
+            while (next < replays.size() || !running.isEmpty()) {
+                final boolean startNext = max ? running.isEmpty() : (System.nanoTime() - t0) / 1000 >= due[next];
+                if (next < replays.size() && startNext) {
+                    final Replay replay = replays.get(next++);
+                    start(replay, scheduler, pool);
+                    running.add(replay);
+                }
+                // take segments off the queues like the client tick would so the searches don't wait on them
+                for (Iterator<Replay> it = running.iterator(); it.hasNext(); ) {
+                    final Replay replay = it.next();
+                    final boolean done = replay.future.isDone();
+                    while (replay.queue.poll() != null);
+                    if (!done) continue;
+                    it.remove();
+                    final long micros = (System.nanoTime() - replay.startNanos) / 1000;
+                    final TraceFile.Request request = replay.request;
+                    final boolean comparable = request.status != null && request.cachedLegs == 0;
+                    if (comparable) {
+                        originalMicros += request.endMicros;
+                        replayMicros += micros;
+                    }
+                    final boolean isSlower = comparable && micros > request.endMicros * (1 + slower);
+                    if (isSlower) slowerCount++;
+                    final String original = request.status == null
+                        ? "didn't finish"
+                        : String.format(Locale.ROOT, "%s in %.1fms (first segment %.1fms, %d segments, %s context%s)", request.status,
+                            request.endMicros / 1e3, request.firstSegmentMicros() / 1e3, request.segments.size(),
+                            request.warmLegs > 0 ? "warm" : "cold", request.cachedLegs > 0 ? ", " + request.cachedLegs + " legs from cache" : "");
+                    System.out.println(String.format(Locale.ROOT, "request %d: %s%n  original %s%n  replay   %s in %.1fms (first segment %.1fms, %d segments)%s",
+                        replay.index, describe(request.points), original, replay.future.join(), micros / 1e3, replay.firstSegmentNanos / 1e6,
+                        replay.segments.get(), comparable ? String.format(Locale.ROOT, " %+.0f%%%s", 100.0 * (micros - request.endMicros) / Math.max(1, request.endMicros), isSlower ? " SLOWER" : "") : ""));
+                }
+                Thread.sleep(1);
+            }
+        } finally {
+            pool.clear();
+        }
+        System.out.println(String.format(Locale.ROOT, "%d requests replayed in %.2f seconds at %s speed with %d workers, %d slower by more than %.0f%%. Comparable requests took %.2fs then and %.2fs now",
+            replays.size(), (System.nanoTime() - t0) / 1e9, max ? "maximum" : "original", workers, slowerCount, slower * 100, originalMicros / 1e6, replayMicros / 1e6));
+    }
+}
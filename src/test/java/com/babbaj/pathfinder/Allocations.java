@@ -0,0 +1,24 @@
+package com.babbaj.pathfinder;
+
+import org.junit.Assume;
+
+import java.lang.management.ManagementFactory;
+
+// Counts the bytes the current thread allocates, tests that need it are skipped on JVMs that can't tell
+final class Allocations {
+    private Allocations() {}
+
+    static long measure(Runnable work) {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue("thread allocation counting is not supported", bean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue("thread allocation counting is not supported", threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        final long id = Thread.currentThread().getId();
+        // the first call can allocate while it sets itself up
+        threads.getThreadAllocatedBytes(id);
+        final long before = threads.getThreadAllocatedBytes(id);
+        work.run();
+        return threads.getThreadAllocatedBytes(id) - before;
+    }
+}
@@ -0,0 +1,114 @@
+package com.babbaj.pathfinder;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LodSegmentTest {
+
+    // A line along x that wanders up to a block off it in y and z, x is unique so every point can be found again
+    private static long[] noisyLine(int points, long seed) {
+        final Random random = new Random(seed);
+        final long[] packed = new long[points];
+        for (int i = 0; i < points; i++) {
+            packed[i] = PackedPos.pack(i - points / 2, 64 + random.nextInt(2), -300 + random.nextInt(2));
+        }
+        return packed;
+    }
+
+    private static int indexOf(long[] points, long pos, int from) {
+        for (int i = from; i < points.length; i++) {
+            if (points[i] == pos) return i;
+        }
+        throw new AssertionError("Kept point is not in the full path");
+    }
+
+    @Test
+    public void droppedPointsAreWithinTolerance() {
+        final long[] full = noisyLine(2000, 1);
+        final LodSegment segment = LodSegment.build(full);
+        for (int level = 1; level < LodSegment.LEVELS; level++) {
+            final double tolerance = LodSegment.LEVEL_TOLERANCES[level];
+            final long[] kept = segment.levels[level];
+            int previous = 0;
+            for (int k = 1; k < kept.length; k++) {
+                final int next = indexOf(full, kept[k], previous + 1);
+                for (int i = previous + 1; i < next; i++) {
+                    final double error = Math.sqrt(PathSimplifier.distanceSq(full[i], full[previous], full[next]));
+                    assertTrue("point " + i + " is " + error + " off level " + level, error <= tolerance);
+                }
+                previous = next;
+            }
+            assertEquals(full.length - 1, previous);
+        }
+    }
+
+    @Test
+    public void endpointsAndPieceBoundariesAreKept() {
+        final long[] full = noisyLine(1000, 2);
+        final LodSegment segment = LodSegment.build(full);
+        final int pieces = segment.pieceCount();
+        assertEquals((full.length - 2) / (LodSegment.PIECE_VERTICES - 1) + 1, pieces);
+        for (int level = 0; level < LodSegment.LEVELS; level++) {
+            final long[] points = segment.levels[level];
+            assertEquals(full[0], points[0]);
+            assertEquals(full[full.length - 1], points[points.length - 1]);
+            assertEquals(pieces, segment.pieceStarts[level].length);
+            for (int piece = 0; piece < pieces; piece++) {
+                final int start = piece * (LodSegment.PIECE_VERTICES - 1);
+                assertEquals(start, segment.pieceStarts[0][piece]);
+                assertEquals(full[start], points[segment.pieceStarts[level][piece]]);
+                // the end of a piece is the start of the next one
+                final int end = Math.min(full.length - 1, start + LodSegment.PIECE_VERTICES - 1);
+                assertEquals(full[end], points[segment.pieceEnd(level, piece)]);
+            }
+        }
+    }
+
+    @Test
+    public void noisyLineGetsFewerVertices() {
+        final long[] full = noisyLine(5000, 3);
+        final LodSegment segment = LodSegment.build(full);
+        for (int level = 1; level < LodSegment.LEVELS; level++) {
+            assertTrue(segment.levels[level].length <= segment.levels[level - 1].length);
+        }
+        assertTrue(segment.levels[1].length < full.length);
+        // the noise is smaller than the tolerance so only the piece boundaries are left
+        assertEquals(segment.pieceCount() + 1, segment.levels[2].length);
+    }
+
+    @Test
+    public void straightLineKeepsOnlyPieceBoundaries() {
+        final long[] full = new long[600];
+        for (int i = 0; i < full.length; i++) {
+            full[i] = PackedPos.pack(i, 80, 2 * i);
+        }
+        final LodSegment segment = LodSegment.build(full);
+        assertEquals(segment.pieceCount() + 1, segment.levels[1].length);
+    }
+
+    @Test
+    public void shortSegments() {
+        final long a = PackedPos.pack(1, 2, 3);
+        final long b = PackedPos.pack(4, 5, 6);
+        final LodSegment one = LodSegment.build(new long[] {a});
+        final LodSegment two = LodSegment.build(new long[] {a, b});
+        for (int level = 0; level < LodSegment.LEVELS; level++) {
+            assertArrayEquals(new long[] {a}, one.levels[level]);
+            assertArrayEquals(new long[] {a, b}, two.levels[level]);
+        }
+    }
+
+    @Test
+    public void concatKeepsSharedPointOnce() {
+        final long[] full = noisyLine(700, 4);
+        final long[] first = Arrays.copyOfRange(full, 0, 400);
+        final long[] second = Arrays.copyOfRange(full, 399, full.length);
+        final LodSegment joined = LodSegment.concat(new LodSegment[] {LodSegment.build(first), LodSegment.build(second)});
+        assertArrayEquals(full, joined.full());
+        assertEquals(LodSegment.build(first).pieceCount() + LodSegment.build(second).pieceCount(), joined.pieceCount());
+    }
+}
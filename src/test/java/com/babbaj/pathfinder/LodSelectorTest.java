@@ -0,0 +1,102 @@
+package com.babbaj.pathfinder;
+
+import org.junit.Test;
+
+import java.nio.IntBuffer;
+
+import static org.junit.Assert.*;
+
+public class LodSelectorTest {
+    // looking along +x from the camera: in front of it, at most 1000 blocks ahead and inside a 90 degree cone
+    private static final float[][] LOOKING_EAST = {
+        {1, 0, 0, 0},
+        {-1, 0, 0, 1000},
+        {1, 1, 0, 0},
+        {1, -1, 0, 0},
+        {1, 0, 1, 0},
+        {1, 0, -1, 0}
+    };
+
+    @Test
+    public void levelForDistance() {
+        assertEquals(0, LodSelector.levelForDistance(0, 8));
+        assertEquals(0, LodSelector.levelForDistance(7.9, 8));
+        assertEquals(1, LodSelector.levelForDistance(8, 8));
+        assertEquals(2, LodSelector.levelForDistance(32, 8));
+        assertEquals(3, LodSelector.levelForDistance(128, 8));
+        assertEquals(LodSegment.LEVELS - 1, LodSelector.levelForDistance(1e9, 8));
+        // no scale always draws the full path
+        assertEquals(0, LodSelector.levelForDistance(1e9, 0));
+    }
+
+    @Test
+    public void distanceToBlocks() {
+        final LodSelector selector = new LodSelector(0.5, 64.5, 0.5, 100, 8, null);
+        // the camera is inside the block
+        assertEquals(0, selector.distanceSq(0, 64, 0, 0, 64, 0), 0);
+        // the range covers x from 10 to 21
+        assertEquals(9.5 * 9.5, selector.distanceSq(10, 64, 0, 20, 64, 0), 1e-9);
+        // and x from -30 to -10
+        assertEquals(10.5 * 10.5, selector.distanceSq(-30, 64, 0, -11, 64, 0), 1e-9);
+    }
+
+    @Test
+    public void beyondRenderDistanceIsNotDrawn() {
+        final LodSelector selector = new LodSelector(0, 64, 0, 100, 8, null);
+        assertEquals(-1, selector.select(101, 64, 0, 200, 64, 0));
+        assertTrue(selector.select(99, 64, 0, 200, 64, 0) >= 0);
+        // the part of a long range that is closest counts
+        assertTrue(selector.select(-5000, 64, 0, 5000, 64, 0) >= 0);
+    }
+
+    @Test
+    public void frustumCulling() {
+        final LodSelector selector = new LodSelector(0, 64, 0, Double.POSITIVE_INFINITY, 8, LOOKING_EAST);
+        // ahead of the camera
+        assertEquals(LodSelector.levelForDistance(50, 8), selector.select(50, 64, 0, 60, 64, 0));
+        // behind it
+        assertEquals(-1, selector.select(-60, 64, 0, -50, 64, 0));
+        // too far to the side
+        assertEquals(-1, selector.select(10, 64, 100, 20, 64, 120));
+        // past the far plane
+        assertEquals(-1, selector.select(1100, 64, 0, 1200, 64, 0));
+        // a range that only reaches into the view is drawn
+        assertTrue(selector.select(-100, 64, 0, 100, 64, 0) >= 0);
+        assertTrue(selector.select(10, 64, -200, 20, 64, 200) >= 0);
+    }
+
+    @Test
+    public void planesAreRelativeToTheCamera() {
+        final LodSelector selector = new LodSelector(10_000, 64, -10_000, Double.POSITIVE_INFINITY, 8, LOOKING_EAST);
+        assertTrue(selector.select(10_050, 64, -10_000, 10_060, 64, -10_000) >= 0);
+        assertEquals(-1, selector.select(9_940, 64, -10_000, 9_950, 64, -10_000));
+    }
+
+    @Test
+    public void selectsRangesOfTheBuffer() {
+        final PathBuffer buffer = new PathBuffer();
+        // three pieces from behind the camera to far ahead of it
+        final long[] points = new long[2 * (LodSegment.PIECE_VERTICES - 1) + 100];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = PackedPos.pack(i - 300, 64, i % 2);
+        }
+        final LodSegment segment = LodSegment.build(points);
+        assertEquals(3, segment.pieceCount());
+        buffer.append(segment);
+
+        final IntBuffer firsts = IntBuffer.allocate(8);
+        final IntBuffer counts = IntBuffer.allocate(8);
+        final int visible = buffer.selectVisible(new LodSelector(0, 64, 0, Double.POSITIVE_INFINITY, 8, LOOKING_EAST), firsts, counts);
+        // the first piece is behind the camera, the second is around it and the third is far enough to be simplified
+        assertEquals(2, visible);
+        assertEquals(segment.pieceStarts[0][1], firsts.get(0));
+        assertEquals(segment.pieceEnd(0, 1) - segment.pieceStarts[0][1] + 1, counts.get(0));
+        final int level = LodSelector.levelForDistance(2 * (LodSegment.PIECE_VERTICES - 1) - 300, 8);
+        assertTrue(level > 0);
+        assertEquals(segment.pieceEnd(level, 2) - segment.pieceStarts[level][2] + 1, counts.get(1));
+        assertEquals(2, firsts.limit());
+
+        // nothing is drawn once the path is further away than the render distance
+        assertEquals(0, buffer.selectVisible(new LodSelector(0, 64, 5000, 100, 8, null), firsts, counts));
+    }
+}
@@ -0,0 +1,60 @@
+package com.babbaj.pathfinder;
+
+import net.minecraft.util.math.BlockPos;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PackedPosTest {
+    private static final int[] HORIZONTAL = {0, 1, -1, 15, 16, -16, -17, 1000, -1000, 29_999_999, -29_999_999, 30_000_000, -30_000_000, 33_554_431, -33_554_432};
+    // BlockPos keeps 12 bits of y
+    private static final int[] VERTICAL = {0, 1, -1, 127, 128, 255, 256, -64, 2047, -2048};
+
+    @Test
+    public void matchesBlockPos() {
+        for (int x : HORIZONTAL) {
+            for (int y : VERTICAL) {
+                for (int z : HORIZONTAL) {
+                    final long packed = PackedPos.pack(x, y, z);
+                    assertEquals(new BlockPos(x, y, z).toLong(), packed);
+                    assertEquals(x, PackedPos.x(packed));
+                    assertEquals(y, PackedPos.y(packed));
+                    assertEquals(z, PackedPos.z(packed));
+                    final BlockPos pos = BlockPos.fromLong(packed);
+                    assertEquals(x, pos.getX());
+                    assertEquals(y, pos.getY());
+                    assertEquals(z, pos.getZ());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void chunkKey() {
+        assertEquals(PackedPos.chunkKey(-1, -1), PackedPos.chunkKey(PackedPos.pack(-1, 64, -16)));
+        assertEquals(PackedPos.chunkKey(1, -2), PackedPos.chunkKey(PackedPos.pack(16, 64, -17)));
+        assertNotEquals(PackedPos.chunkKey(0, -1), PackedPos.chunkKey(-1, 0));
+    }
+
+    @Test
+    public void decodingDoesNotAllocate() {
+        final long[] path = new long[100_000];
+        for (int i = 0; i < path.length; i++) {
+            path[i] = PackedPos.pack(i - 50_000, i & 127, 2 * i - 30_000_000);
+        }
+        // warm up so the measured loop runs compiled
+        long sum = 0;
+        for (int i = 0; i < 20; i++) sum += decode(path);
+        final long allocated = Allocations.measure(() -> decode(path));
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+        assertTrue(sum != 0);
+    }
+
+    private static long decode(long[] path) {
+        long sum = 0;
+        for (long pos : path) {
+            sum += PackedPos.x(pos) + PackedPos.y(pos) + PackedPos.z(pos);
+        }
+        return sum;
+    }
+}
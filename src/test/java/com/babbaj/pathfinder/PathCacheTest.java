@@ -0,0 +1,151 @@
+package com.babbaj.pathfinder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class PathCacheTest {
+    private static final long SEED = 146008555100680L;
+
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        this.directory = Files.createTempDirectory("pathcache");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(this.directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static PathCache.Key key(int x) {
+        return new PathCache.Key(SEED, PackedPos.pack(x, 64, 0), PackedPos.pack(x + 100, 64, 0), true);
+    }
+
+    private static List<long[]> path(int x, int points) {
+        final long[] packed = new long[points];
+        for (int i = 0; i < points; i++) packed[i] = PackedPos.pack(x + i, 64, 0);
+        return Arrays.asList(packed, new long[] {PackedPos.pack(x + points, 65, 1)});
+    }
+
+    private static void assertPathEquals(List<long[]> expected, List<long[]> actual) {
+        assertNotNull(actual);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), actual.get(i));
+        }
+    }
+
+    private Path cacheFile() throws IOException {
+        try (Stream<Path> files = Files.list(this.directory)) {
+            return files.filter(p -> p.getFileName().toString().startsWith("cache-")).findFirst().orElseThrow(AssertionError::new);
+        }
+    }
+
+    // Flips a bit in the middle of the only record, where the path is
+    private void damageRecord() throws IOException {
+        try (FileChannel file = FileChannel.open(cacheFile(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final long offset = file.size() / 2;
+            final ByteBuffer b = ByteBuffer.allocate(1);
+            file.read(b, offset);
+            b.put(0, (byte) (b.get(0) ^ 0x01));
+            b.rewind();
+            file.write(b, offset);
+        }
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        try (PathCache cache = PathCache.open(this.directory, 1 << 20)) {
+            assertNull(cache.get(key(0)));
+            cache.put(key(0), path(0, 100));
+            cache.put(key(1000), path(1000, 10));
+            assertPathEquals(path(0, 100), cache.get(key(0)));
+            assertPathEquals(path(1000, 10), cache.get(key(1000)));
+            assertEquals(2, cache.getHits());
+            assertEquals(1, cache.getMisses());
+        }
+        try (PathCache cache = PathCache.open(this.directory, 1 << 20)) {
+            assertEquals(2, cache.size());
+            assertPathEquals(path(0, 100), cache.get(key(0)));
+        }
+    }
+
+    @Test
+    public void findsNearStart() throws IOException {
+        try (PathCache cache = PathCache.open(this.directory, 1 << 20)) {
+            cache.put(key(0), path(0, 100));
+            final PathCache.Key near = new PathCache.Key(SEED, PackedPos.pack(5, 64, 3), key(0).end, true);
+            assertEquals(key(0), cache.findNearStart(near, 8));
+            assertNull(cache.findNearStart(near, 4));
+        }
+    }
+
+    @Test
+    public void damagedRecordIsDroppedOnOpen() throws IOException {
+        try (PathCache cache = PathCache.open(this.directory, 1 << 20)) {
+            cache.put(key(0), path(0, 100));
+        }
+        damageRecord();
+        try (PathCache cache = PathCache.open(this.directory, 1 << 20)) {
+            assertEquals(0, cache.size());
+            assertNull(cache.get(key(0)));
+        }
+    }
+
+    @Test
+    public void damagedRecordIsDroppedOnRead() throws IOException {
+        try (PathCache cache = PathCache.open(this.directory, 1 << 20)) {
+            cache.put(key(0), path(0, 100));
+            damageRecord();
+            assertNull(cache.get(key(0)));
+            assertEquals(0, cache.size());
+            assertEquals(1, cache.getMisses());
+            // and it can be stored again
+            cache.put(key(0), path(0, 100));
+            assertPathEquals(path(0, 100), cache.get(key(0)));
+        }
+    }
+
+    @Test
+    public void compactionKeepsRecentRecords() throws IOException {
+        final long maxBytes = 16 * 1024;
+        try (PathCache cache = PathCache.open(this.directory, maxBytes)) {
+            cache.put(key(0), path(0, 100));
+            for (int i = 1; i < 100; i++) {
+                // key(0) is used between every write so it is never the oldest
+                assertNotNull(cache.get(key(0)));
+                cache.put(key(i * 1000), path(i * 1000, 100));
+                assertTrue(cache.sizeBytes() <= maxBytes);
+            }
+            assertTrue(cache.size() < 100);
+            assertPathEquals(path(0, 100), cache.get(key(0)));
+            assertPathEquals(path(99_000, 100), cache.get(key(99_000)));
+        }
+        try (Stream<Path> files = Files.list(this.directory)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public void limitFitsInAMapping() {
+        assertThrows(IllegalArgumentException.class, () -> PathCache.open(this.directory, PathCache.MAX_BYTES + 1));
+        assertTrue((long) 1024 << 20 <= PathCache.MAX_BYTES);
+    }
+}
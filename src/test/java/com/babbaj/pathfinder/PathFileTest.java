@@ -0,0 +1,149 @@
+package com.babbaj.pathfinder;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PathFileTest {
+    private static final long SEED = 146008555100680L;
+
+    private static byte[] write(List<long[]> segments, boolean raytrace) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (PathFile.Writer writer = new PathFile.Writer(bytes, SEED, raytrace)) {
+            for (long[] packed : segments) {
+                writer.writeSegment(packed);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<long[]> read(byte[] file) throws IOException {
+        final List<long[]> segments = new ArrayList<>();
+        try (PathFile.Reader reader = new PathFile.Reader(new ByteArrayInputStream(file))) {
+            assertEquals(SEED, reader.seed);
+            long[] packed;
+            while ((packed = reader.nextSegment()) != null) {
+                segments.add(packed);
+            }
+        }
+        return segments;
+    }
+
+    private static void assertSegmentsEqual(List<long[]> expected, List<long[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals("segment " + i, expected.get(i), actual.get(i));
+        }
+    }
+
+    // A walk of small steps like the pathfinder produces, split into segments that continue where the last one ended
+    private static List<long[]> walk(int segments, int pointsPerSegment, long seed) {
+        final Random random = new Random(seed);
+        final List<long[]> out = new ArrayList<>();
+        int x = -12_345, y = 64, z = 67_890;
+        for (int s = 0; s < segments; s++) {
+            final long[] packed = new long[pointsPerSegment];
+            for (int i = 0; i < packed.length; i++) {
+                if (i > 0 || s == 0) {
+                    x += random.nextInt(7) - 3;
+                    y = Math.max(1, Math.min(127, y + random.nextInt(3) - 1));
+                    z += random.nextInt(7) - 3;
+                }
+                packed[i] = PackedPos.pack(x, y, z);
+            }
+            out.add(packed);
+        }
+        return out;
+    }
+
+    @Test
+    public void multiSegmentRoundTrip() throws IOException {
+        final List<long[]> path = walk(20, 500, 1);
+        assertSegmentsEqual(path, read(write(path, true)));
+    }
+
+    @Test
+    public void negativeAndLargeDeltas() throws IOException {
+        final List<long[]> path = Arrays.asList(
+            new long[] {
+                PackedPos.pack(-30_000_000, 0, 30_000_000),
+                PackedPos.pack(30_000_000, 255, -30_000_000),
+                PackedPos.pack(-33_554_432, -2048, 33_554_431),
+                PackedPos.pack(33_554_431, 2047, -33_554_432),
+                PackedPos.pack(0, 0, 0),
+                PackedPos.pack(-1, -1, -1)
+            },
+            new long[] {PackedPos.pack(-1, 64, -1)});
+        assertSegmentsEqual(path, read(write(path, false)));
+    }
+
+    @Test
+    public void emptyPath() throws IOException {
+        final byte[] file = write(new ArrayList<>(), true);
+        assertTrue(read(file).isEmpty());
+        // a segment without points isn't written
+        assertArrayEquals(file, write(Arrays.asList(new long[0], new long[0]), true));
+    }
+
+    @Test
+    public void headerIsKept() throws IOException {
+        for (boolean raytrace : new boolean[] {true, false}) {
+            try (PathFile.Reader reader = new PathFile.Reader(new ByteArrayInputStream(write(walk(1, 10, 2), raytrace)))) {
+                assertEquals(SEED, reader.seed);
+                assertEquals(raytrace, reader.raytrace);
+            }
+        }
+    }
+
+    @Test
+    public void flippedByteFailsTheChecksum() throws IOException {
+        final byte[] file = write(walk(3, 200, 3), true);
+        // the low bit of a payload byte changes a coordinate without changing where the varints end
+        for (int offset : new int[] {30, file.length / 2, file.length - 10}) {
+            final byte[] corrupt = file.clone();
+            corrupt[offset] ^= 0x01;
+            final IOException ex = assertThrows(IOException.class, () -> read(corrupt));
+            assertTrue(ex.getMessage(), ex.getMessage().contains("checksum"));
+        }
+        // and so does a wrong checksum
+        final byte[] corrupt = file.clone();
+        corrupt[file.length - 1] ^= 0x01;
+        assertThrows(IOException.class, () -> read(corrupt));
+    }
+
+    @Test
+    public void truncatedFileThrowsEof() throws IOException {
+        final byte[] file = write(walk(3, 200, 4), true);
+        for (int length : new int[] {0, 3, 10, 14, 15, file.length / 2, file.length - 5, file.length - 1}) {
+            final byte[] truncated = Arrays.copyOf(file, length);
+            assertThrows("cut at " + length, EOFException.class, () -> read(truncated));
+        }
+    }
+
+    @Test
+    public void smallerThanPackedLongs() throws IOException {
+        final List<long[]> path = walk(10, 1000, 5);
+        final long points = path.stream().mapToLong(packed -> packed.length).sum();
+        final int size = write(path, true).length;
+        assertTrue(size + " bytes for " + points + " points", size < 8 * points / 2);
+    }
+
+    @Test
+    public void writerCountsPoints() throws IOException {
+        final List<long[]> path = walk(4, 100, 6);
+        try (PathFile.Writer writer = new PathFile.Writer(new ByteArrayOutputStream(), SEED, true)) {
+            for (long[] packed : path) writer.writeSegment(packed);
+            assertEquals(400, writer.getPointCount());
+            assertTrue(writer.size() > 0);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.babbaj.pathfinder;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PathIndexTest {
+    // a path along x from 0 to 999 and then along z to 999
+    private static PathIndex corner(int cellSize) {
+        final long[] first = new long[1000];
+        final long[] second = new long[1000];
+        for (int i = 0; i < 1000; i++) {
+            first[i] = PackedPos.pack(i, 64, 0);
+            second[i] = PackedPos.pack(999, 64, i);
+        }
+        final PathIndex index = new PathIndex(cellSize);
+        index.placeLast(index.addPart(first));
+        index.placeLast(index.addPart(second));
+        return index;
+    }
+
+    @Test
+    public void nearestOnThePath() {
+        final PathIndex index = corner(32);
+        final PathIndex.Projection projection = index.nearest(500, 64, 3, 32);
+        assertNotNull(projection);
+        assertEquals(3, projection.distance, 1e-9);
+        assertEquals(500, projection.along, 1e-9);
+    }
+
+    @Test
+    public void nothingWithinMaxDistance() {
+        assertNull(corner(32).nearest(500, 64, 100, 32));
+    }
+
+    @Test
+    public void farOutsideTheBounds() {
+        final PathIndex index = corner(32);
+        // straight out from the start and diagonally out from the corner
+        final PathIndex.Projection start = index.nearest(-50000, 64, 0, Double.POSITIVE_INFINITY);
+        assertEquals(50000, start.distance, 1e-6);
+        assertEquals(0, start.along, 1e-9);
+        final PathIndex.Projection end = index.nearest(999 + 30000, 64, 999 + 40000, Double.POSITIVE_INFINITY);
+        assertEquals(50000, end.distance, 1e-6);
+        assertEquals(index.getTotalLength(), end.along, 1e-9);
+    }
+
+    @Test
+    public void matchesLinearScan() {
+        final long[] path = new long[5000];
+        final Random random = new Random(3);
+        int x = 0, z = 0;
+        for (int i = 0; i < path.length; i++) {
+            if (random.nextBoolean()) x += random.nextInt(3) - 1;
+            else z += random.nextInt(3) - 1;
+            path[i] = PackedPos.pack(x, 64, z);
+        }
+        final PathIndex index = new PathIndex(16);
+        for (int from = 0; from < path.length - 1; from += 500) {
+            final long[] part = new long[Math.min(501, path.length - from)];
+            System.arraycopy(path, from, part, 0, part.length);
+            index.placeLast(index.addPart(part));
+        }
+        for (int i = 0; i < 200; i++) {
+            // near the path, around it and far away from it
+            final int spread = i < 100 ? 200 : 20000;
+            final double qx = random.nextInt(spread * 2) - spread;
+            final double qz = random.nextInt(spread * 2) - spread;
+            double best = Double.POSITIVE_INFINITY;
+            for (long pos : path) {
+                final double dx = PackedPos.x(pos) - qx, dy = PackedPos.y(pos) - 64, dz = PackedPos.z(pos) - qz;
+                best = Math.min(best, Math.sqrt(dx * dx + dy * dy + dz * dz));
+            }
+            // the path only makes unit steps so the closest point on an edge is never much closer than its ends
+            assertEquals(best, index.nearest(qx, 64, qz, Double.POSITIVE_INFINITY).distance, 1);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.babbaj.pathfinder;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class SegmentQueueTest {
+
+    @Test
+    public void capacityIsRoundedUpToAPowerOfTwo() {
+        assertEquals(1, new SegmentQueue<Long>(1).capacity());
+        assertEquals(8, new SegmentQueue<Long>(5).capacity());
+        assertEquals(16, new SegmentQueue<Long>(16).capacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityMustBePositive() {
+        new SegmentQueue<Long>(0);
+    }
+
+    @Test
+    public void empty() {
+        final SegmentQueue<Long> queue = new SegmentQueue<>(4);
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.size());
+        assertNull(queue.poll());
+        assertNull(queue.peek());
+        assertNull(queue.peek(1));
+    }
+
+    @Test
+    public void full() {
+        final SegmentQueue<Long> queue = new SegmentQueue<>(4);
+        for (long i = 0; i < 4; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(4L));
+        assertEquals(4, queue.size());
+        assertEquals(Long.valueOf(0), queue.poll());
+        assertTrue(queue.offer(4L));
+        assertFalse(queue.offer(5L));
+    }
+
+    @Test
+    public void wrapsAroundInOrder() {
+        final SegmentQueue<Long> queue = new SegmentQueue<>(4);
+        long next = 0;
+        long expected = 0;
+        // many more items than slots, with the queue at different fill levels
+        for (int round = 0; round < 1000; round++) {
+            final int add = round % 4 + 1;
+            for (int i = 0; i < add && queue.offer(next); i++) {
+                next++;
+            }
+            assertEquals(Long.valueOf(expected), queue.peek());
+            if (queue.size() > 1) {
+                assertEquals(Long.valueOf(expected + 1), queue.peek(1));
+            }
+            final int take = round % 3 + 1;
+            for (int i = 0; i < take; i++) {
+                final Long value = queue.poll();
+                if (value == null) break;
+                assertEquals(Long.valueOf(expected++), value);
+            }
+        }
+        Long value;
+        while ((value = queue.poll()) != null) {
+            assertEquals(Long.valueOf(expected++), value);
+        }
+        assertEquals(next, expected);
+    }
+
+    @Test
+    public void putOnFullQueueStopsWhenCancelled() {
+        final SegmentQueue<Long> queue = new SegmentQueue<>(1);
+        assertTrue(queue.offer(0L));
+        final AtomicBoolean cancelled = new AtomicBoolean(true);
+        assertFalse(queue.put(1L, cancelled));
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void putWaitsForTheConsumer() throws Exception {
+        final SegmentQueue<Long> queue = new SegmentQueue<>(1);
+        assertTrue(queue.offer(0L));
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        final CompletableFuture<Boolean> put = CompletableFuture.supplyAsync(() -> queue.put(1L, cancelled));
+        Thread.sleep(20);
+        assertFalse(put.isDone());
+        assertEquals(Long.valueOf(0), queue.poll());
+        assertTrue(put.get(5, TimeUnit.SECONDS));
+        assertEquals(Long.valueOf(1), queue.poll());
+    }
+
+    @Test
+    public void putIsReleasedByCancel() throws Exception {
+        final SegmentQueue<Long> queue = new SegmentQueue<>(1);
+        assertTrue(queue.offer(0L));
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        final CompletableFuture<Boolean> put = CompletableFuture.supplyAsync(() -> queue.put(1L, cancelled));
+        Thread.sleep(20);
+        cancelled.set(true);
+        assertFalse(put.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void handoffDoesNotAllocate() {
+        final SegmentQueue<long[]> queue = new SegmentQueue<>(64);
+        final long[] segment = new long[16];
+        for (int i = 0; i < 10_000; i++) handoff(queue, segment);
+        final long allocated = Allocations.measure(() -> {
+            for (int i = 0; i < 100_000; i++) handoff(queue, segment);
+        });
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    private static void handoff(SegmentQueue<long[]> queue, long[] segment) {
+        queue.offer(segment);
+        queue.peekEnqueuedAt();
+        queue.poll();
+    }
+}
@@ -0,0 +1,138 @@
+package com.babbaj.pathfinder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TraceFileTest {
+    private static final long SEED = 146008555100680L;
+    private static final SegmentSizer.Settings SIZING = new SegmentSizer.Settings(10_000, 1_000, 100_000, 50_000_000L, true);
+
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        this.file = Files.createTempFile("trace", ".bin").toFile();
+    }
+
+    @After
+    public void deleteFile() {
+        this.file.delete();
+    }
+
+    private List<TraceFile.Request> read() throws IOException {
+        try (InputStream in = new FileInputStream(this.file)) {
+            return TraceFile.read(in);
+        }
+    }
+
+    // One session with a finished request and one that was still running
+    private void writeSession(long sessionMillis, int x) throws IOException {
+        try (TraceFile.Writer writer = new TraceFile.Writer(this.file, sessionMillis)) {
+            writer.request(0, 100, SEED, new long[] {PackedPos.pack(x, 64, 0), PackedPos.pack(x + 1000, 64, 0)}, true, SIZING, 0);
+            writer.segment(0, 2_000, 500);
+            writer.segment(0, 3_000, 400);
+            writer.end(0, 3_500, PathSearch.Status.FOUND, 1, 2);
+            writer.request(1, 5_000, SEED, new long[] {PackedPos.pack(x, 64, 0), PackedPos.pack(x, 64, 1000)}, false, SIZING, 30_000_000_000L);
+            writer.segment(1, 1_000, 10);
+        }
+    }
+
+    private void truncate(long length) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(this.file, "rw")) {
+            raf.setLength(length);
+        }
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        writeSession(1_000, 0);
+        final List<TraceFile.Request> requests = read();
+        assertEquals(2, requests.size());
+
+        final TraceFile.Request done = requests.get(0);
+        assertEquals(1_000, done.sessionMillis);
+        assertEquals(100, done.startMicros);
+        assertEquals(SEED, done.seed);
+        assertArrayEquals(new long[] {PackedPos.pack(0, 64, 0), PackedPos.pack(1000, 64, 0)}, done.points);
+        assertTrue(done.raytrace);
+        assertEquals(SIZING.initial, done.sizing.initial);
+        assertEquals(SIZING.targetNanos, done.sizing.targetNanos);
+        assertTrue(done.sizing.adaptive);
+        assertEquals(0, done.timeoutNanos);
+        assertEquals(2, done.segments.size());
+        assertEquals(2_000, done.firstSegmentMicros());
+        assertEquals(PathSearch.Status.FOUND, done.status);
+        assertEquals(3_500, done.endMicros);
+        assertEquals(1, done.cachedLegs);
+        assertEquals(2, done.warmLegs);
+
+        final TraceFile.Request running = requests.get(1);
+        assertFalse(running.raytrace);
+        assertEquals(30_000_000_000L, running.timeoutNanos);
+        assertEquals(1, running.segments.size());
+        assertNull(running.status);
+    }
+
+    @Test
+    public void sessionsAreAppended() throws IOException {
+        writeSession(1_000, 0);
+        writeSession(2_000, 5000);
+        assertEquals(this.file.length(), TraceFile.completeLength(this.file));
+        final List<TraceFile.Request> requests = read();
+        assertEquals(4, requests.size());
+        assertEquals(2_000, requests.get(2).sessionMillis);
+        assertEquals(PackedPos.pack(5000, 64, 0), requests.get(2).points[0]);
+        // request ids start over in every session
+        assertEquals(PathSearch.Status.FOUND, requests.get(2).status);
+    }
+
+    @Test
+    public void tornRecordIsDroppedBeforeAppending() throws IOException {
+        writeSession(1_000, 0);
+        final long complete = this.file.length();
+        // cut inside the last segment record and into the request before it
+        for (long cut = complete - 1; cut > complete - 12; cut--) {
+            writeSession(1_000, 0);
+            truncate(cut);
+            final int before = read().size();
+            assertTrue(TraceFile.completeLength(this.file) <= cut);
+            writeSession(2_000, 5000);
+
+            final List<TraceFile.Request> requests = read();
+            assertEquals("cut at " + cut, before + 2, requests.size());
+            assertEquals(2_000, requests.get(before).sessionMillis);
+            assertEquals(PathSearch.Status.FOUND, requests.get(before).status);
+            assertEquals(1, requests.get(before + 1).segments.size());
+            truncate(0);
+        }
+    }
+
+    @Test
+    public void tornHeaderIsRewritten() throws IOException {
+        writeSession(1_000, 0);
+        truncate(3);
+        assertEquals(0, TraceFile.completeLength(this.file));
+        writeSession(2_000, 0);
+        final List<TraceFile.Request> requests = read();
+        assertEquals(2, requests.size());
+        assertEquals(2_000, requests.get(0).sessionMillis);
+    }
+
+    @Test
+    public void otherFilesAreNotTruncated() throws IOException {
+        Files.write(this.file.toPath(), new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+        assertThrows(IOException.class, () -> new TraceFile.Writer(this.file, 1_000));
+        assertEquals(8, this.file.length());
+    }
+}